@@ -0,0 +1,183 @@
+package com.example;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs a batch of file conversions on a fixed number of threads while keeping the estimated
+ * heap use of all running conversions under a memory budget.
+ *
+ * The heap cost of a file is estimated as (file size * heapFactor + BASE_COST). Whenever a thread
+ * is free, the largest pending file that still fits into the remaining budget is started, so a
+ * few huge files run with fewer neighbours while small files fill the remaining threads. A file
+ * whose estimate exceeds the whole budget is capped at the budget, i.e. it runs alone.
+ *
+ * A failing file (exception or error) is recorded in its Result and doesn't affect the others.
+ */
+public class BatchExecutor {
+
+    // Fixed overhead per conversion (workbook setup, styles, buffers)
+    private static final long BASE_COST = 8L * 1024 * 1024;
+
+    private final int parallelism;
+    private final long memoryBudget;
+    private final double heapFactor;
+
+    // Scheduling state, guarded by "this"
+    private long availableBudget;
+    private int running;
+
+    /**
+     * @param parallelism  maximum number of files converted at the same time
+     * @param memoryBudget heap bytes the running conversions may use together
+     * @param heapFactor   estimated heap bytes needed per byte of input file
+     */
+    public BatchExecutor(int parallelism, long memoryBudget, double heapFactor) {
+        this.parallelism = Math.max(1, parallelism);
+        this.memoryBudget = Math.max(BASE_COST, memoryBudget);
+        this.heapFactor = heapFactor;
+    }
+
+    /**
+     * Converts all inputs and returns one Result per input, in input order.
+     */
+    public List<Result> run(List<File> inputs, Function<File, File> outputFor, FileConverter converter)
+            throws InterruptedException {
+        Result[] results = new Result[inputs.size()];
+
+        // Pending files, largest estimate first
+        List<Integer> pending = new ArrayList<>();
+        long[] costs = new long[inputs.size()];
+        for (int i = 0; i < inputs.size(); i++) {
+            costs[i] = estimateCost(inputs.get(i));
+            pending.add(i);
+        }
+        pending.sort(Comparator.comparingLong((Integer i) -> costs[i]).reversed());
+
+        availableBudget = memoryBudget;
+        running = 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            while (!pending.isEmpty()) {
+                int index = takeNext(pending, costs);
+                File input = inputs.get(index);
+                File output = outputFor.apply(input);
+                long cost = costs[index];
+
+                pool.execute(() -> {
+                    long start = System.nanoTime();
+                    Throwable error = null;
+                    try {
+                        System.out.println("Converting " + input.getName() + " to " + output.getName());
+                        converter.convert(input, output);
+                    } catch (Throwable e) {
+                        // Errors too (e.g. StackOverflowError on deeply nested JSON): the file failed
+                        error = e;
+                        if (e instanceof OutOfMemoryError) {
+                            System.out.println(input.getName() + " ran out of memory with an estimate of "
+                                    + (cost >> 20) + " MB; its heap factor is too low for it.");
+                        }
+                    } finally {
+                        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        results[index] = new Result(input, output, cost, millis, error);
+                        release(cost);
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+
+        List<Result> ordered = new ArrayList<>(results.length);
+        for (Result result : results) {
+            ordered.add(result);
+        }
+        return ordered;
+    }
+
+    /**
+     * Estimated heap cost of converting the given file, capped at the whole budget.
+     */
+    public long estimateCost(File input) {
+        long estimate = (long) (input.length() * heapFactor) + BASE_COST;
+        return Math.min(estimate, memoryBudget);
+    }
+
+    /**
+     * Waits until a thread is free and some pending file fits into the budget, then reserves it.
+     */
+    private synchronized int takeNext(List<Integer> pending, long[] costs) throws InterruptedException {
+        while (true) {
+            if (running < parallelism) {
+                for (int p = 0; p < pending.size(); p++) {
+                    int index = pending.get(p);
+                    if (costs[index] <= availableBudget) {
+                        pending.remove(p);
+                        availableBudget -= costs[index];
+                        running++;
+                        return index;
+                    }
+                }
+            }
+            wait();
+        }
+    }
+
+    private synchronized void release(long cost) {
+        availableBudget += cost;
+        running--;
+        notifyAll();
+    }
+
+    /**
+     * Prints one line per file (in input order) followed by the totals.
+     */
+    public static void printSummary(List<Result> results) {
+        int failed = 0;
+        System.out.println("Summary:");
+        for (Result result : results) {
+            if (result.isSuccess()) {
+                System.out.println("  OK    " + result.getInput().getName() + " -> " + result.getOutput().getName()
+                        + " (" + result.getMillis() + " ms)");
+            } else {
+                failed++;
+                System.out.println("  FAIL  " + result.getInput().getName() + ": " + result.getError());
+            }
+        }
+        System.out.println((results.size() - failed) + " succeeded, " + failed + " failed.");
+    }
+
+    /**
+     * Outcome of a single file conversion.
+     */
+    public static class Result {
+        private final File input;
+        private final File output;
+        private final long estimatedCost;
+        private final long millis;
+        private final Throwable error;
+
+        Result(File input, File output, long estimatedCost, long millis, Throwable error) {
+            this.input = input;
+            this.output = output;
+            this.estimatedCost = estimatedCost;
+            this.millis = millis;
+            this.error = error;
+        }
+
+        public File getInput() { return input; }
+        public File getOutput() { return output; }
+        public long getEstimatedCost() { return estimatedCost; }
+        public long getMillis() { return millis; }
+        public Throwable getError() { return error; }
+        public boolean isSuccess() { return error == null; }
+    }
+}
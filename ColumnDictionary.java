@@ -0,0 +1,115 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every attribute name a dense int id the first time it is seen.
+ * One dictionary is shared by all sheets of a workbook, so each name is hashed into
+ * the dictionary once and every sheet after that works with plain int ids.
+ *
+ * Each sheet keeps its own column order through a {@link Columns} view, which maps
+ * ids to column indexes with an int array instead of List.indexOf.
+ */
+public class ColumnDictionary {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Returns the id of the given name, assigning the next free id if it is new.
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (names) {
+            return ids.computeIfAbsent(name, n -> {
+                names.add(n);
+                return names.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * Returns the id of the given name, or -1 if it has never been seen.
+     */
+    public int lookup(String name) {
+        Integer id = ids.get(name);
+        return (id == null) ? -1 : id;
+    }
+
+    public String nameOf(int id) {
+        synchronized (names) {
+            return names.get(id);
+        }
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Creates an empty column layout for one sheet (or CSV file) backed by this dictionary.
+     */
+    public Columns newColumns() {
+        return new Columns();
+    }
+
+    /**
+     * Column order of a single sheet. Not thread-safe; use one per sheet.
+     */
+    public class Columns {
+        private int[] columnById = new int[0];
+        private final List<String> columnNames = new ArrayList<>();
+
+        /**
+         * Adds the name as the next column if the sheet doesn't have it yet.
+         * Returns its column index either way.
+         */
+        public int add(String name) {
+            int id = idOf(name);
+            if (id >= columnById.length) {
+                int oldLength = columnById.length;
+                columnById = Arrays.copyOf(columnById, Math.max(id + 1, oldLength * 2));
+                Arrays.fill(columnById, oldLength, columnById.length, -1);
+            }
+            int column = columnById[id];
+            if (column < 0) {
+                column = columnNames.size();
+                columnById[id] = column;
+                columnNames.add(name);
+            }
+            return column;
+        }
+
+        /**
+         * Returns the column index of the name in this sheet, or -1 if it isn't a column.
+         */
+        public int columnOf(String name) {
+            int id = lookup(name);
+            return (id < 0 || id >= columnById.length) ? -1 : columnById[id];
+        }
+
+        public String nameAt(int column) {
+            return columnNames.get(column);
+        }
+
+        public int size() {
+            return columnNames.size();
+        }
+
+        public boolean isEmpty() {
+            return columnNames.isEmpty();
+        }
+
+        public List<String> names() {
+            return Collections.unmodifiableList(columnNames);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+
+import java.util.Arrays;
+
+/**
+ * Decides column widths for a sheet, using one of three strategies:
+ *  - EXACT:     Sheet.autoSizeColumn after the sheet is filled (re-scans every cell, needs AWT fonts)
+ *  - ESTIMATED: tracks the widest value per column while rows are written, using a small table of
+ *               character widths, and sets the widths at the end without a second pass
+ *  - OFF:       leaves Excel's default widths
+ *
+ * Usage: create one per sheet, call prepare() right after creating the sheet, track() every
+ * header and value as it is written, then apply() once the sheet is filled.
+ */
+public class ColumnWidths {
+
+    public enum Strategy { EXACT, ESTIMATED, OFF }
+
+    // Extra room for cell padding and the filter arrow, in characters
+    private static final double PADDING = 1.5;
+    // Bold header text is a bit wider than regular text
+    private static final double BOLD_FACTOR = 1.1;
+    // Excel's limit is 255 characters
+    private static final int MAX_WIDTH = 255 * 256;
+
+    // Width of each ASCII character relative to the digit '0' (Excel's width unit) in Calibri 11
+    private static final double[] CHAR_WIDTHS = new double[128];
+    static {
+        Arrays.fill(CHAR_WIDTHS, 1.0);
+        for (char c : "ijlI!.,:;'|`".toCharArray()) CHAR_WIDTHS[c] = 0.45;
+        for (char c : "frt()[]{}-\"/\\ ".toCharArray()) CHAR_WIDTHS[c] = 0.6;
+        for (char c = 'A'; c <= 'Z'; c++) CHAR_WIDTHS[c] = 1.15;
+        for (char c : "MWmw@%".toCharArray()) CHAR_WIDTHS[c] = 1.5;
+        CHAR_WIDTHS['I'] = 0.45;
+    }
+    // Anything outside ASCII (accents are close to 1.0, CJK is about twice as wide)
+    private static final double WIDE_CHAR = 2.0;
+    private static final char CJK_START = 0x2E80;
+
+    private final Strategy strategy;
+    private double[] widths = new double[0];
+
+    public ColumnWidths(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Streaming sheets only keep a window of rows in memory, so EXACT sizing has to start
+     * tracking columns before the first row is written.
+     */
+    public void prepare(Sheet sheet) {
+        if (strategy == Strategy.EXACT && sheet instanceof SXSSFSheet) {
+            ((SXSSFSheet) sheet).trackAllColumnsForAutoSizing();
+        }
+    }
+
+    public void trackHeader(int column, String name) {
+        if (strategy == Strategy.ESTIMATED) {
+            update(column, estimate(name) * BOLD_FACTOR);
+        }
+    }
+
+    public void track(int column, String value) {
+        if (strategy == Strategy.ESTIMATED) {
+            update(column, estimate(value));
+        }
+    }
+
+    /**
+     * Sets the widths of columns 0..columnCount-1 according to the strategy.
+     */
+    public void apply(Sheet sheet, int columnCount) {
+        switch (strategy) {
+            case EXACT:
+                for (int c = 0; c < columnCount; c++) {
+                    sheet.autoSizeColumn(c);
+                }
+                break;
+            case ESTIMATED:
+                for (int c = 0; c < columnCount && c < widths.length; c++) {
+                    // width is in 1/256 of a character
+                    int width = (int) Math.ceil((widths[c] + PADDING) * 256);
+                    sheet.setColumnWidth(c, Math.min(MAX_WIDTH, width));
+                }
+                break;
+            case OFF:
+            default:
+                break;
+        }
+    }
+
+    private void update(int column, double width) {
+        if (column >= widths.length) {
+            widths = Arrays.copyOf(widths, Math.max(column + 1, widths.length * 2));
+        }
+        if (width > widths[column]) {
+            widths[column] = width;
+        }
+    }
+
+    /**
+     * Rendered width of the text in character units; multi-line text counts its widest line.
+     */
+    static double estimate(String text) {
+        if (text == null) return 0;
+        double widest = 0;
+        double line = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '\n') {
+                widest = Math.max(widest, line);
+                line = 0;
+            } else if (ch < CHAR_WIDTHS.length) {
+                line += CHAR_WIDTHS[ch];
+            } else {
+                line += (ch >= CJK_START) ? WIDE_CHAR : 1.0;
+            }
+        }
+        return Math.max(widest, line);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Remembers the SHA-256 of every input file that was converted successfully, in a small
+ * properties file next to the outputs. A file whose content hash matches and whose output
+ * still exists doesn't need to be converted again.
+ *
+ * The size and modification time the file had when it was hashed are kept too, under
+ * "<name>/stat" (no file name contains a '/'), so an untouched file can be skipped without
+ * reading it at all.
+ */
+public class ConversionManifest {
+
+    private static final String STAT_SUFFIX = "/stat";
+
+    private final File manifestFile;
+    private final Properties hashes = new Properties();
+
+    public ConversionManifest(File manifestFile) throws IOException {
+        this.manifestFile = manifestFile;
+        if (manifestFile.exists()) {
+            try (InputStream in = new FileInputStream(manifestFile)) {
+                hashes.load(in);
+            }
+        }
+    }
+
+    /**
+     * True if the input was already converted with exactly this content and the output is still there.
+     */
+    public synchronized boolean isCurrent(File input, String hash, File output) {
+        return output.exists() && hash.equals(hashes.getProperty(input.getName()));
+    }
+
+    /**
+     * True if the input still has the size and modification time it had when it was recorded and
+     * the output is still there, so it doesn't even need to be hashed.
+     */
+    public synchronized boolean isUnchanged(File input, File output) {
+        return output.exists() && stat(input).equals(hashes.getProperty(input.getName() + STAT_SUFFIX));
+    }
+
+    /**
+     * @param stat the input's {@link #stat} taken before hashing it, so a file that changes while it
+     *             is hashed or converted doesn't look unchanged next time
+     */
+    public synchronized void record(File input, String hash, String stat) {
+        hashes.setProperty(input.getName(), hash);
+        hashes.setProperty(input.getName() + STAT_SUFFIX, stat);
+    }
+
+    /**
+     * The file's size and modification time, as the manifest keeps them.
+     */
+    public static String stat(File file) {
+        return file.length() + "," + file.lastModified();
+    }
+
+    /**
+     * Writes the manifest to a temp file first and renames it, so a crash never leaves it half written.
+     */
+    public synchronized void save() throws IOException {
+        File temp = new File(manifestFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            hashes.store(out, "Content hashes of converted input files");
+        }
+        Files.move(temp.toPath(), manifestFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Hex SHA-256 of the file content.
+     */
+    public static String contentHash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,214 @@
+package com.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing and volume figures for one file conversion.
+ *
+ * Each phase (parse, build, autosize, write, ...) is timed around a block:
+ *
+ *   metrics.time("write", () -> { ... });
+ *   JSONObject root = metrics.time("parse", () -> new JSONObject(text));
+ *
+ * Phase durations are exclusive: a phase opened inside another one on the same thread is subtracted
+ * from the outer one, so the phases of a file add up to (roughly) its total time. Every phase and
+ * every finished file is also emitted as a JFR event, and finished files are handed to the RunReport.
+ */
+public class ConversionMetrics {
+
+    private static final ThreadLocal<Phase> CURRENT_PHASE = new ThreadLocal<>();
+
+    private final File input;
+    private final long bytesIn;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong cells = new AtomicLong();
+    private final AtomicLong peakHeap = new AtomicLong();
+
+    private File output;
+    private long bytesOut;
+    private long totalNanos;
+    private Throwable error;
+
+    private ConversionMetrics(File input) {
+        this.input = input;
+        this.bytesIn = input.length();
+        sampleHeap();
+    }
+
+    public static ConversionMetrics start(File input) {
+        return new ConversionMetrics(input);
+    }
+
+    /**
+     * A timed block without a result.
+     */
+    public interface Task<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * A timed block that returns a result.
+     */
+    public interface Action<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Runs task as the phase name.
+     */
+    public <E extends Exception> void time(String name, Task<E> task) throws E {
+        Phase phase = new Phase(name);
+        try {
+            task.run();
+        } finally {
+            phase.end();
+        }
+    }
+
+    /**
+     * Runs action as the phase name and returns its result.
+     */
+    public <T, E extends Exception> T time(String name, Action<T, E> action) throws E {
+        Phase phase = new Phase(name);
+        try {
+            return action.run();
+        } finally {
+            phase.end();
+        }
+    }
+
+    public void addRows(long count) {
+        rows.addAndGet(count);
+    }
+
+    public void addCells(long count) {
+        cells.addAndGet(count);
+    }
+
+    public void fail(Throwable error) {
+        this.error = error;
+    }
+
+    /**
+     * Completes the measurement, emits the file event and records it in the RunReport.
+     */
+    public void finish(File output) {
+        this.output = output;
+        this.bytesOut = output.exists() ? output.length() : 0;
+        this.totalNanos = System.nanoTime() - startNanos;
+        sampleHeap();
+
+        FileConversionEvent event = new FileConversionEvent();
+        event.file = input.getName();
+        event.bytesIn = bytesIn;
+        event.bytesOut = bytesOut;
+        event.rows = rows.get();
+        event.cells = cells.get();
+        event.success = (error == null);
+        event.commit();
+
+        RunReport.record(this);
+    }
+
+    private void sampleHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        peakHeap.accumulateAndGet(used, Math::max);
+    }
+
+    public File getInput() { return input; }
+    public File getOutput() { return output; }
+    public long getBytesIn() { return bytesIn; }
+    public long getBytesOut() { return bytesOut; }
+    public long getRows() { return rows.get(); }
+    public long getCells() { return cells.get(); }
+    public long getTotalNanos() { return totalNanos; }
+    public long getPeakHeap() { return peakHeap.get(); }
+    public Throwable getError() { return error; }
+
+    public Map<String, Long> getPhaseNanos() {
+        synchronized (phaseNanos) {
+            return new LinkedHashMap<>(phaseNanos);
+        }
+    }
+
+    /**
+     * One timed phase; end() records the duration.
+     */
+    private class Phase {
+        private final String name;
+        private final Phase parent;
+        private final long start = System.nanoTime();
+        private final ConversionPhaseEvent event = new ConversionPhaseEvent();
+        private long childNanos;
+
+        private Phase(String name) {
+            this.name = name;
+            this.parent = CURRENT_PHASE.get();
+            CURRENT_PHASE.set(this);
+            event.file = input.getName();
+            event.phase = name;
+            event.begin();
+        }
+
+        void end() {
+            long elapsed = System.nanoTime() - start;
+            CURRENT_PHASE.set(parent);
+            if (parent != null) {
+                parent.childNanos += elapsed;
+            }
+            synchronized (phaseNanos) {
+                phaseNanos.merge(name, elapsed - childNanos, Long::sum);
+            }
+            sampleHeap();
+            event.commit();
+        }
+    }
+
+    @Name("com.example.ConversionPhase")
+    @Label("Conversion Phase")
+    @Category("JSON Excel Converter")
+    static class ConversionPhaseEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("com.example.FileConversion")
+    @Label("File Conversion")
+    @Category("JSON Excel Converter")
+    static class FileConversionEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Cells")
+        long cells;
+
+        @Label("Success")
+        boolean success;
+    }
+}
@@ -0,0 +1,352 @@
+package com.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import convertJSONtoJAVA.requestCSVtoJSON;
+import convertJSONtoJAVA.requestJSONtoCSV;
+import org.apache.poi.EmptyFileException;
+import org.apache.poi.UnsupportedFileFormatException;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.json.JSONException;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipException;
+
+/**
+ * Keeps one JVM running and converts over HTTP, so small requests don't pay JVM startup, POI class
+ * loading and JIT warm-up every time:
+ *
+ *   POST /json-to-xlsx   benefitRequest JSON   -> workbook      (JsonToExcelBatch, never split into parts)
+ *   POST /xlsx-to-json   workbook              -> benefitRequest JSON (ExcelToJsonBatch, streaming)
+ *   POST /json-to-csv    { "keyValue":[...] }  -> CSV           (requestJSONtoCSV, streaming)
+ *   POST /csv-to-json    CSV                   -> { "keyValue":[...] } (requestCSVtoJSON, streaming)
+ *   GET  /report         run report of the conversions since the last call
+ *
+ *   curl --data-binary @request.json -o request.xlsx http://localhost:8085/json-to-xlsx
+ *
+ * The request body is streamed to a temp file while its SHA-256 is computed, converted with the
+ * existing file converters, and the result is streamed back. Results up to CACHE_MAX_RESULT bytes
+ * are kept in an LRU cache keyed by endpoint and content hash, so a repeated payload is answered
+ * without converting again (X-Cache: HIT). A body that converts to nothing (e.g. no benefitRequest)
+ * is answered with 422 and not cached. Each request runs on its own virtual thread when the
+ * JVM has them (Java 21+), otherwise on a cached thread pool.
+ *
+ * A body the converter can't parse (malformed JSON, CSV or workbook) is answered with 400, any
+ * other failure with 500. Conversions share a heap budget the way BatchExecutor's files do; a
+ * request whose estimated cost doesn't fit into what the running ones leave is answered with 503
+ * and Retry-After instead of waiting.
+ */
+public class ConversionService {
+
+    private static final int DEFAULT_PORT = 8085;
+
+    // LRU result cache: at most CACHE_ENTRIES results and CACHE_BYTES in total;
+    // larger results are converted every time
+    private static final int CACHE_ENTRIES = 256;
+    private static final long CACHE_BYTES = 64L * 1024 * 1024;
+    private static final long CACHE_MAX_RESULT = 4L * 1024 * 1024;
+
+    // The run report is reset after this many conversions if nobody fetches it
+    private static final long REPORT_MAX_FILES = 10_000;
+
+    // Heap the running conversions may use together, estimated per request as in BatchExecutor.
+    // All endpoints stream, so HEAP_FACTOR is that of the streaming converters.
+    private static final long MEMORY_BUDGET = (long) (Runtime.getRuntime().maxMemory() * 0.7);
+    private static final double HEAP_FACTOR = 2.0;
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    private static final String XLSX_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final String CSV_TYPE = "text/csv; charset=utf-8";
+
+    private final ResultCache cache = new ResultCache();
+    private final AtomicLong reportedFiles = new AtomicLong();
+    private final BatchExecutor sizing = new BatchExecutor(1, MEMORY_BUDGET, HEAP_FACTOR);
+    // One permit per KiB of the budget
+    private final Semaphore admission = new Semaphore(permits(MEMORY_BUDGET));
+
+    public static void main(String[] args) {
+        // --port=<n> overrides the default port
+        int port = DEFAULT_PORT;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            }
+        }
+
+        try {
+            HttpServer server = new ConversionService().start(port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+            System.out.println("Conversion service listening on port " + server.getAddress().getPort());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Binds the endpoints and starts serving; port 0 picks a free port.
+     */
+    public HttpServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/json-to-xlsx", new ConversionHandler(".json", ".xlsx", XLSX_TYPE,
+                JsonToExcelBatch::convertJsonToSingleWorkbook));
+        server.createContext("/xlsx-to-json", new ConversionHandler(".xlsx", ".json", JSON_TYPE,
+                ExcelToJsonBatch::convertExcelToJsonStreaming));
+        server.createContext("/json-to-csv", new ConversionHandler(".json", ".csv", CSV_TYPE,
+                (input, output) -> requestJSONtoCSV.convertStreaming(input, output, null)));
+        server.createContext("/csv-to-json", new ConversionHandler(".csv", ".json", JSON_TYPE,
+                ConversionService::convertCsvToJson));
+        server.createContext("/report", this::sendReport);
+
+        server.setExecutor(newRequestExecutor());
+        RunReport.begin();
+        server.start();
+        return server;
+    }
+
+    /**
+     * One virtual thread per request where available. Looked up reflectively so the project still
+     * builds and runs on Java 17, where it falls back to a cached pool of platform threads.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Converts the request body with one FileConverter.
+     */
+    private class ConversionHandler implements HttpHandler {
+        private final String inputExtension;
+        private final String outputExtension;
+        private final String contentType;
+        private final FileConverter converter;
+
+        ConversionHandler(String inputExtension, String outputExtension, String contentType, FileConverter converter) {
+            this.inputExtension = inputExtension;
+            this.outputExtension = outputExtension;
+            this.contentType = contentType;
+            this.converter = converter;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            File input = null;
+            File output = null;
+            try {
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    sendText(exchange, 405, "Use POST");
+                    return;
+                }
+
+                // Spool the body to disk (the converters work on files) and hash it on the way
+                input = File.createTempFile("request", inputExtension);
+                MessageDigest digest = newDigest();
+                try (InputStream body = new DigestInputStream(exchange.getRequestBody(), digest)) {
+                    Files.copy(body, input.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                String hash = ConversionManifest.toHex(digest.digest());
+                String key = exchange.getHttpContext().getPath() + ":" + hash;
+
+                exchange.getResponseHeaders().set("Content-Type", contentType);
+                exchange.getResponseHeaders().set("ETag", "\"" + hash + "\"");
+
+                byte[] cached = cache.get(key);
+                if (cached != null) {
+                    exchange.getResponseHeaders().set("X-Cache", "HIT");
+                    exchange.sendResponseHeaders(200, cached.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(cached);
+                    }
+                    return;
+                }
+
+                int cost = permits(sizing.estimateCost(input));
+                if (!admission.tryAcquire(cost)) {
+                    exchange.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+                    sendText(exchange, 503, "Busy, retry later");
+                    return;
+                }
+                output = File.createTempFile("result", outputExtension);
+                try {
+                    converter.convert(input, output);
+                } catch (Exception e) {
+                    if (isMalformedInput(e)) {
+                        sendText(exchange, 400, "Malformed request body: " + e.getMessage());
+                    } else {
+                        e.printStackTrace();
+                        sendText(exchange, 500, "Conversion failed: " + e.getMessage());
+                    }
+                    return;
+                } finally {
+                    admission.release(cost);
+                    if (reportedFiles.incrementAndGet() >= REPORT_MAX_FILES) {
+                        reportedFiles.set(0);
+                        RunReport.begin();
+                    }
+                }
+
+                // The converters skip input they don't recognize (no benefitRequest, no CVS sections,
+                // no keyValue array) without failing, so an empty result means nothing was converted
+                long length = output.length();
+                if (length == 0) {
+                    sendText(exchange, 422, "Nothing to convert in the request body");
+                    return;
+                }
+                if (length <= CACHE_MAX_RESULT) {
+                    byte[] result = Files.readAllBytes(output.toPath());
+                    cache.put(key, result);
+                }
+                exchange.getResponseHeaders().set("X-Cache", "MISS");
+                exchange.sendResponseHeaders(200, length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    Files.copy(output.toPath(), out);
+                }
+            } finally {
+                exchange.close();
+                if (input != null && !input.delete()) {
+                    input.deleteOnExit();
+                }
+                if (output != null && !output.delete()) {
+                    output.deleteOnExit();
+                }
+            }
+        }
+    }
+
+    /**
+     * requestCSVtoJSON.convertStreaming, with the parser's errors (which only say "IOException
+     * reading next record") marked as malformed input.
+     */
+    private static void convertCsvToJson(File input, File output) throws Exception {
+        try {
+            requestCSVtoJSON.convertStreaming(input, output);
+        } catch (UncheckedIOException e) {
+            throw new MalformedInputException("Malformed CSV: " + e.getCause().getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether a conversion failed because of the request body rather than the service: a parse
+     * error anywhere in the cause chain.
+     */
+    private static boolean isMalformedInput(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JSONException
+                    || cause instanceof MalformedInputException
+                    || cause instanceof SAXException
+                    || cause instanceof ZipException
+                    || cause instanceof InvalidFormatException
+                    || cause instanceof UnsupportedFileFormatException
+                    || cause instanceof EmptyFileException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A heap cost in admission permits (KiB), at least one.
+     */
+    private static int permits(long bytes) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / 1024));
+    }
+
+    /**
+     * GET /report: the run report of everything converted since the last call, then starts over.
+     */
+    private void sendReport(HttpExchange exchange) throws IOException {
+        File report = File.createTempFile("run-report", ".json");
+        try {
+            RunReport.write(report);
+            RunReport.begin();
+            reportedFiles.set(0);
+
+            exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+            exchange.sendResponseHeaders(200, report.length());
+            try (OutputStream out = exchange.getResponseBody()) {
+                Files.copy(report.toPath(), out);
+            }
+        } finally {
+            exchange.close();
+            report.delete();
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * A request body the converter couldn't parse.
+     */
+    private static class MalformedInputException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        MalformedInputException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Least-recently-used results, bounded by entry count and total bytes.
+     */
+    private static class ResultCache {
+        private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        synchronized byte[] get(String key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(String key, byte[] result) {
+            byte[] previous = entries.put(key, result);
+            if (previous != null) {
+                bytes -= previous.length;
+            }
+            bytes += result.length;
+
+            Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+            while ((entries.size() > CACHE_ENTRIES || bytes > CACHE_BYTES) && eldest.hasNext()) {
+                bytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+    }
+}
@@ -1,16 +1,38 @@
 package com.example;
 
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Scans an input folder for .xlsx files, converts them to JSON by:
@@ -19,6 +41,14 @@ import java.util.List;
  *     - If there are multiple data rows, treat it as array of objects [{"keyValue":[...]}, ...].
  * 2) Reassembles them under benefitRequest.dataSet.CVS with each sheet name as the key.
  * 3) Writes placeholders for transactionID, clientCode, data, etc.
+ *
+ * Workbooks split by JsonToExcelBatch are joined back: base.part2.xlsx, base.part3.xlsx, ... are
+ * read after base.xlsx (and not converted on their own), and "Copay#2", "Copay#3", ... sheets
+ * continue the rows of "Copay".
+ *
+ * --sheets=Copay,Deductible and --attributes=PlanCode,CopayAmount limit the output to those sheets
+ * and columns (see Projection). The streaming path does not even inflate the other sheets, and
+ * drops the other columns before their values are formatted.
  */
 public class ExcelToJsonBatch {
 
@@ -26,7 +56,50 @@ public class ExcelToJsonBatch {
     private static final String INPUT_DIR  = "C:/Development/myCode/inputExcel";
     private static final String OUTPUT_DIR = "C:/Development/myCode/outputJson";
 
+    // Streaming input reads sheets with the XSSF event (SAX) model and writes the JSON as it goes,
+    // instead of loading the whole workbook and the whole output tree into memory.
+    private static final boolean STREAMING_INPUT = true;
+
+    // Parse the sheet parts of a workbook concurrently on the fork/join pool, up to SHEET_WINDOW
+    // sheets ahead of the one being written; the JSON is still written in sheet order. Shared
+    // strings and styles are loaded once and shared, each sheet gets its own DataFormatter.
+    // Pays off for workbooks with several large sheets (streaming input only); the batch already
+    // converts several files at once, so it is opt-in.
+    private static final boolean PARALLEL_SHEETS = false;
+    private static final int SHEET_WINDOW = Runtime.getRuntime().availableProcessors();
+
+    // Files are converted concurrently, limited by thread count and an estimated heap budget.
+    // HEAP_FACTOR is the heap needed per byte of (compressed) xlsx; the DOM workbook is far heavier.
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final long MEMORY_BUDGET = (long) (Runtime.getRuntime().maxMemory() * 0.7);
+    private static final double HEAP_FACTOR = STREAMING_INPUT ? 2.0 : 60.0;
+
+    // Per-phase timings, volumes and peak heap of each batch, written next to the outputs
+    private static final String RUN_REPORT = "run-report.json";
+
     public static void main(String[] args) {
+        // --watch keeps running and converts files as they land in INPUT_DIR;
+        // --sheets=a,b and --attributes=x,y keep only those sheets and columns
+        boolean watch = false;
+        String sheets = null;
+        String attributes = null;
+        for (String arg : args) {
+            if ("--watch".equals(arg)) {
+                watch = true;
+            } else if (arg.startsWith("--sheets=")) {
+                sheets = arg.substring("--sheets=".length());
+            } else if (arg.startsWith("--attributes=")) {
+                attributes = arg.substring("--attributes=".length());
+            }
+        }
+        Projection projection = Projection.parse(sheets, attributes);
+        FileConverter converter = STREAMING_INPUT
+                ? (excelFile, jsonFile) -> convertExcelToJsonStreaming(excelFile, jsonFile, projection)
+                : (excelFile, jsonFile) -> convertExcelToJson(excelFile, jsonFile, projection);
+        if (!projection.isAll()) {
+            System.out.println("Keeping only " + projection);
+        }
+
         try {
             // 1) Ensure input dir
             File inputDir = new File(INPUT_DIR);
@@ -35,12 +108,22 @@ public class ExcelToJsonBatch {
                 if (created) {
                     System.out.println("Created input folder: " + INPUT_DIR);
                 }
-                System.out.println("Place your .xlsx files there, then run again.");
+                if (!watch) {
+                    System.out.println("Place your .xlsx files there, then run again.");
+                    return;
+                }
+            }
+
+            if (watch) {
+                BatchExecutor executor = new BatchExecutor(PARALLELISM, MEMORY_BUDGET, HEAP_FACTOR);
+                new WatchDaemon(inputDir, new File(OUTPUT_DIR), ".xlsx", ".json", executor, converter).run();
                 return;
             }
 
             // 2) Find .xlsx
-            File[] excelFiles = inputDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".xlsx"));
+            // (continuation parts are read together with their first workbook)
+            File[] excelFiles = inputDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".xlsx")
+                    && !ShardedWorkbookWriter.isPartFile(name));
             if (excelFiles == null || excelFiles.length == 0) {
                 System.out.println("No .xlsx files found in " + INPUT_DIR);
                 return;
@@ -55,14 +138,14 @@ public class ExcelToJsonBatch {
                 }
             }
 
-            // 4) Convert each xlsx
-            for (File excelFile : excelFiles) {
-                String baseName = excelFile.getName().replaceFirst("[.][^.]+$", "");
-                File jsonFile = new File(outputDir, baseName + ".json");
-
-                System.out.println("Converting " + excelFile.getName() + " to " + jsonFile.getName());
-                convertExcelToJson(excelFile, jsonFile);
-            }
+            // 4) Convert the xlsx files, several at a time within the heap budget
+            RunReport.begin();
+            BatchExecutor executor = new BatchExecutor(PARALLELISM, MEMORY_BUDGET, HEAP_FACTOR);
+            List<BatchExecutor.Result> results = executor.run(Arrays.asList(excelFiles),
+                    excelFile -> new File(outputDir, excelFile.getName().replaceFirst("[.][^.]+$", "") + ".json"),
+                    converter);
+            BatchExecutor.printSummary(results);
+            RunReport.write(new File(outputDir, RUN_REPORT));
 
             System.out.println("All conversions finished.");
 
@@ -74,16 +157,19 @@ public class ExcelToJsonBatch {
     /**
      * Convert a single Excel file to JSON, scanning all sheets.
      */
-    private static void convertExcelToJson(File excelFile, File jsonFile) {
-        Workbook workbook = null;
-        FileInputStream fis = null;
-        FileOutputStream fos = null;
+    static void convertExcelToJson(File excelFile, File jsonFile) throws Exception {
+        convertExcelToJson(excelFile, jsonFile, Projection.ALL);
+    }
 
-        try {
-            fis = new FileInputStream(excelFile);
-            workbook = new XSSFWorkbook(fis);
+    /**
+     * Same as convertExcelToJson, keeping only the sheets and columns selected by projection.
+     */
+    static void convertExcelToJson(File excelFile, File jsonFile, Projection projection) throws Exception {
+        ConversionMetrics metrics = ConversionMetrics.start(excelFile);
 
-            // Build the structure:
+        try {
+            // Collect the sheets (of every part) into a table; it is written in the same envelope as the
+            // streaming path:
             // {
             //   "benefitRequest": {
             //     "transactionID": "PLACEHOLDER",
@@ -97,143 +183,355 @@ public class ExcelToJsonBatch {
             //     }
             //   }
             // }
-
-            JSONObject root = new JSONObject();
-            JSONObject benefitRequest = new JSONObject();
-            root.put("benefitRequest", benefitRequest);
-
-            // placeholders for top-level
-            benefitRequest.put("transactionID", "PLACEHOLDER");
-            benefitRequest.put("clientCode", "PLACEHOLDER");
-            benefitRequest.put("data", JSONObject.NULL);
-
-            JSONObject dataSet = new JSONObject();
-            JSONObject cvs = new JSONObject();
-            dataSet.put("CVS", cvs);
-            benefitRequest.put("dataSet", dataSet);
-
-            // Parse each sheet
-            int numSheets = workbook.getNumberOfSheets();
-            for (int i = 0; i < numSheets; i++) {
-                Sheet sheet = workbook.getSheetAt(i);
-                String sheetName = sheet.getSheetName();
-
-                // Let's see how many data rows it has (besides header).
-                int dataRowCount = sheet.getPhysicalNumberOfRows() - 1; 
-                // Note: getPhysicalNumberOfRows() can be tricky if there are blank rows,
-                // but let's assume we have a consistent spreadsheet.
-
-                if (dataRowCount <= 0) {
-                    // no data rows
-                    continue;
-                }
-                else if (dataRowCount == 1) {
-                    // single row -> interpret as single { "keyValue":[ ... ] }
-                    JSONObject singleObject = new JSONObject();
-                    parseKeyValueSingleObjectSheet(sheet, singleObject);
-                    cvs.put(sheetName, singleObject);
-                } else {
-                    // multiple rows -> interpret as array [ { "keyValue":[...] }, ... ]
-                    JSONArray arrayOfObjects = new JSONArray();
-                    parseKeyValueArraySheet(sheet, arrayOfObjects);
-                    cvs.put(sheetName, arrayOfObjects);
+            // A sheet with a single data row becomes an object, more rows an array; sheets without data are skipped.
+            KeyValueTable table = new KeyValueTable();
+            ShardedWorkbookWriter.Continuations continuations = new ShardedWorkbookWriter.Continuations();
+            for (File part : ShardedWorkbookWriter.partFiles(excelFile)) {
+                // The workbook is read completely into memory, so its stream can be closed right away
+                Workbook workbook = metrics.time("open", () -> {
+                    try (FileInputStream fis = new FileInputStream(part)) {
+                        return new XSSFWorkbook(fis);
+                    }
+                });
+                try {
+                    metrics.time("build", () -> KeyValueTableIO.readWorkbook(workbook, table, continuations, projection));
+                } finally {
+                    try { workbook.close(); } catch (Exception e) { /* ignore */ }
                 }
             }
+            for (KeyValueTable.Section section : table.getSections()) {
+                metrics.addRows(section.getRowCount());
+                metrics.addCells(section.getCellCount());
+            }
 
             // Write out JSON
-            fos = new FileOutputStream(jsonFile);
-            fos.write(root.toString(4).getBytes());
+            metrics.time("write", () -> {
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(jsonFile), StandardCharsets.UTF_8))) {
+                    KeyValueTableIO.writeRequestJson(table, writer);
+                }
+            });
             System.out.println("Created JSON: " + jsonFile.getAbsolutePath());
 
         } catch (Exception e) {
-            e.printStackTrace();
+            metrics.fail(e);
+            throw e;
         } finally {
-            if (workbook != null) {
-                try { workbook.close(); } catch (Exception e) { /* ignore */ }
+            metrics.finish(jsonFile);
+        }
+    }
+
+    /**
+     * Streaming variant of convertExcelToJson. Each sheet part is parsed with XSSFSheetXMLHandler
+     * and every data row is written to the JSON file as soon as it is complete, so memory stays
+     * roughly constant per row no matter how large the workbook is.
+     */
+    static void convertExcelToJsonStreaming(File excelFile, File jsonFile) throws Exception {
+        convertExcelToJsonStreaming(excelFile, jsonFile, Projection.ALL);
+    }
+
+    /**
+     * Same as convertExcelToJsonStreaming, keeping only the sheets and columns selected by projection.
+     */
+    static void convertExcelToJsonStreaming(File excelFile, File jsonFile, Projection projection) throws Exception {
+        JsonStreamWriter json = null;
+        ConversionMetrics metrics = ConversionMetrics.start(excelFile);
+
+        try {
+            json = new JsonStreamWriter(new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(jsonFile), StandardCharsets.UTF_8)), 4);
+
+            // Same envelope (and placeholders) as the in-memory path
+            json.beginObject().name("benefitRequest").beginObject();
+            json.name("transactionID").value("PLACEHOLDER");
+            json.name("clientCode").value("PLACEHOLDER");
+            json.name("data").nullValue();
+            json.name("dataSet").beginObject().name("CVS").beginObject();
+
+            SectionJsonWriter sections = new SectionJsonWriter(json, metrics);
+            SheetSectionHandler handler = null;
+            ShardedWorkbookWriter.Continuations continuations = new ShardedWorkbookWriter.Continuations();
+            for (File part : ShardedWorkbookWriter.partFiles(excelFile)) {
+                handler = parseWorkbook(part, sections, metrics, projection, continuations, handler);
             }
-            if (fis != null) {
-                try { fis.close(); } catch (Exception e) { /* ignore */ }
+            if (handler != null) {
+                handler.finish();
             }
-            if (fos != null) {
-                try { fos.close(); } catch (Exception e) { /* ignore */ }
+
+            JsonStreamWriter out = json;
+            metrics.time("write", () -> {
+                out.endObject().endObject().endObject().endObject();
+                out.flush();
+            });
+            System.out.println("Created JSON: " + jsonFile.getAbsolutePath());
+
+        } catch (Exception e) {
+            metrics.fail(e);
+            throw e;
+        } finally {
+            if (json != null) {
+                try { json.close(); } catch (Exception e) { /* ignore */ }
             }
+            metrics.finish(jsonFile);
         }
     }
 
     /**
-     * Parses a sheet that has 1 header row + 1 data row.
-     * Rebuilds an object: { "keyValue": [ { "attribute":..., "value":... }, ... ] }
+     * Streams the sheets of one workbook (or part) into the JSON. A shard sheet ("Copay#2") keeps
+     * writing into the section of the sheet before it, which may come from the previous part, so
+     * the last sheet's handler is left open and returned; open is the one left by the previous part.
+     * Sheets the projection leaves out are closed again without being read.
      */
-    private static void parseKeyValueSingleObjectSheet(Sheet sheet, JSONObject destination) {
-        JSONArray keyValueArray = new JSONArray();
+    private static SheetSectionHandler parseWorkbook(File excelFile, KeyValueJsonReader.Handler sections,
+                                                     ConversionMetrics metrics, Projection projection,
+                                                     ShardedWorkbookWriter.Continuations continuations,
+                                                     SheetSectionHandler open) throws Exception {
+        OPCPackage pkg = metrics.time("open", () -> OPCPackage.open(excelFile, PackageAccess.READ));
+        try {
+            metrics.time("open", () -> continuations.startWorkbook(pkg));
+            // Each shared string is resolved once, not once per cell that uses it
+            SharedStrings sharedStrings = metrics.time("open",
+                    () -> new SharedStringCache(new ReadOnlySharedStringsTable(pkg)));
+            return metrics.time("parse", () -> {
+                XSSFReader reader = new XSSFReader(pkg);
+                StylesTable styles = reader.getStylesTable();
+                XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+                if (PARALLEL_SHEETS) {
+                    return parseSheetsConcurrently(sheets, styles, sharedStrings, sections, projection,
+                            continuations, open);
+                }
+                return SheetSectionHandler.readSheets(sheets, styles, sharedStrings, projection, sections,
+                        continuations, open);
+            });
+        } finally {
+            // read-only package: revert closes it without trying to save
+            pkg.revert();
+        }
+    }
 
-        Iterator<Row> rowIterator = sheet.iterator();
-        if (!rowIterator.hasNext()) return; // no rows at all
-        Row headerRow = rowIterator.next();
+    /**
+     * PARALLEL_SHEETS variant of parseWorkbook's loop: every sheet part is parsed on the fork/join
+     * pool into a RowBuffer (see SheetRecorder) while this thread replays the finished ones, in
+     * sheet order, into the same SheetSectionHandlers the sequential loop uses.
+     */
+    private static SheetSectionHandler parseSheetsConcurrently(XSSFReader.SheetIterator sheets, StylesTable styles,
+                                                               SharedStrings sharedStrings,
+                                                               KeyValueJsonReader.Handler sections,
+                                                               Projection projection,
+                                                               ShardedWorkbookWriter.Continuations continuations,
+                                                               SheetSectionHandler open) throws Exception {
+        Deque<ParsedSheet> inFlight = new ArrayDeque<>();
+        try {
+            while (sheets.hasNext()) {
+                InputStream sheetStream = sheets.next();
+                String sheetName = sheets.getSheetName();
+                boolean continued = continuations.next(sheetName);
+                if (!projection.includesSheet(continuations.getSectionName())) {
+                    sheetStream.close();
+                    continue;
+                }
 
-        if (!rowIterator.hasNext()) return; // no data row
-        Row dataRow = rowIterator.next();
+                ParsedSheet sheet = new ParsedSheet(sheetName, continued, continuations.getSectionName());
+                // Each worker holds at most its share of a RowBuffer's memory before spilling
+                SheetRecorder recorder = new SheetRecorder(projection,
+                        new RowBuffer(RowBuffer.DEFAULT_SPILL_THRESHOLD / SHEET_WINDOW));
+                sheet.rows = ForkJoinPool.commonPool().submit(() -> recorder.parse(sheetStream, styles, sharedStrings));
+                inFlight.add(sheet);
 
-        int cellCount = headerRow.getPhysicalNumberOfCells();
-        for (int c = 0; c < cellCount; c++) {
-            Cell headerCell = headerRow.getCell(c);
-            if (headerCell == null) continue;
-            String attribute = headerCell.getStringCellValue();
+                if (inFlight.size() >= SHEET_WINDOW) {
+                    open = replaySheet(inFlight.poll(), sections, projection, open);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                open = replaySheet(inFlight.poll(), sections, projection, open);
+            }
+            return open;
+        } finally {
+            // After a failure: let the other workers finish (the package is closed next) and drop their rows
+            for (ParsedSheet sheet : inFlight) {
+                try { sheet.rows.get().close(); } catch (Exception e) { /* ignore */ }
+            }
+        }
+    }
 
-            Cell dataCell = dataRow.getCell(c);
-            String value = (dataCell == null) ? "" : dataCell.toString();
+    /**
+     * Waits for a sheet's worker and feeds its rows to the handler of its section.
+     */
+    private static SheetSectionHandler replaySheet(ParsedSheet sheet, KeyValueJsonReader.Handler sections,
+                                                   Projection projection, SheetSectionHandler open) throws Exception {
+        RowBuffer rows;
+        try {
+            rows = sheet.rows.get();
+        } catch (ExecutionException e) {
+            Throwable cause = (e.getCause() instanceof UncheckedIOException) ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
 
-            JSONObject kv = new JSONObject();
-            kv.put("attribute", attribute);
-            kv.put("value", value);
-            keyValueArray.put(kv);
+        try {
+            open = SheetSectionHandler.forSheet(open, sheet.sheetName, sheet.continued, sheet.sectionName,
+                    projection, sections);
+            try (RowBuffer.Cursor cursor = rows.openCursor()) {
+                while (cursor.next()) {
+                    open.startRow(-1);
+                    for (int i = 0; i < cursor.size(); i++) {
+                        open.cell(cursor.column(i), cursor.value(i));
+                    }
+                    open.endRow(-1);
+                }
+            }
+            return open;
+        } finally {
+            rows.close();
         }
+    }
 
-        destination.put("keyValue", keyValueArray);
+    /**
+     * A sheet handed to a worker, with what the (sequential) continuation check found out about it.
+     */
+    private static class ParsedSheet {
+        final String sheetName;
+        final boolean continued;
+        final String sectionName;
+        Future<RowBuffer> rows;
+
+        ParsedSheet(String sheetName, boolean continued, String sectionName) {
+            this.sheetName = sheetName;
+            this.continued = continued;
+            this.sectionName = sectionName;
+        }
     }
 
     /**
-     * Parses a sheet that has 1 header row + multiple data rows.
-     * Rebuilds an array: [ { "keyValue":[ ... ] }, { "keyValue":[ ... ] }, ... ]
+     * Worker side of PARALLEL_SHEETS: parses one sheet part and records its formatted cells as
+     * (column, value) rows, the header row in full and afterwards only the columns the projection
+     * keeps, so the expensive part (XML, shared string lookups, number formatting) runs in parallel.
      */
-    private static void parseKeyValueArraySheet(Sheet sheet, JSONArray destinationArray) {
-        Iterator<Row> rowIterator = sheet.iterator();
-        if (!rowIterator.hasNext()) return;
+    private static class SheetRecorder implements SheetContentsHandler {
+        private final Projection projection;
+        private final RowBuffer rows;
+
+        private boolean[] keep;
+        private int[] columns = new int[16];
+        private String[] values = new String[16];
+        private int size;
+        private int nextColumn;
+
+        SheetRecorder(Projection projection, RowBuffer rows) {
+            this.projection = projection;
+            this.rows = rows;
+        }
 
-        // header row
-        Row headerRow = rowIterator.next();
-        int cellCount = headerRow.getPhysicalNumberOfCells();
-        List<String> headers = new ArrayList<>();
-        for (int c = 0; c < cellCount; c++) {
-            Cell cell = headerRow.getCell(c);
-            if (cell == null) {
-                headers.add("");
-            } else {
-                headers.add(cell.toString());
+        RowBuffer parse(InputStream sheetStream, StylesTable styles, SharedStrings sharedStrings) throws Exception {
+            try (InputStream in = sheetStream) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                if (!projection.isAll()) {
+                    parser = new Projection.CellFilter(parser, this::keepsColumn);
+                }
+                // DataFormatter is not thread-safe: one per sheet
+                parser.setContentHandler(new XSSFSheetXMLHandler(styles, sharedStrings, this, new DataFormatter(), false));
+                parser.parse(new InputSource(in));
+                return rows;
+            } catch (Exception | Error e) {
+                rows.close();
+                throw e;
             }
         }
 
-        // data rows
-        while (rowIterator.hasNext()) {
-            Row dataRow = rowIterator.next();
-            JSONArray keyValueArray = new JSONArray();
+        boolean keepsColumn(int col) {
+            return keep == null || (col < keep.length && keep[col]);
+        }
 
-            for (int c = 0; c < headers.size(); c++) {
-                String attribute = headers.get(c);
-                if (attribute == null || attribute.isEmpty()) continue;
+        @Override
+        public void startRow(int rowNum) {
+            size = 0;
+            nextColumn = 0;
+        }
 
-                Cell dataCell = dataRow.getCell(c);
-                String value = (dataCell == null) ? "" : dataCell.toString();
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int col = (cellReference == null) ? nextColumn : new CellReference(cellReference).getCol();
+            nextColumn = col + 1;
+            if (!keepsColumn(col)) return;
+            if (size == columns.length) {
+                columns = Arrays.copyOf(columns, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            columns[size] = col;
+            values[size] = (formattedValue == null) ? "" : formattedValue;
+            size++;
+        }
 
-                JSONObject kv = new JSONObject();
-                kv.put("attribute", attribute);
-                kv.put("value", value);
-                keyValueArray.put(kv);
+        @Override
+        public void endRow(int rowNum) {
+            if (keep == null) {
+                // header row: the attributes decide which columns are worth recording
+                keep = new boolean[(size == 0) ? 0 : columns[size - 1] + 1];
+                for (int i = 0; i < size; i++) {
+                    keep[columns[i]] = !values[i].isEmpty() && projection.includesAttribute(values[i]);
+                }
+            }
+            try {
+                rows.append(columns, values, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        }
 
-            JSONObject elementObj = new JSONObject();
-            elementObj.put("keyValue", keyValueArray);
-            destinationArray.put(elementObj);
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+            // not used
+        }
+    }
+
+    /**
+     * Writes the sections SheetSectionHandler reports into the CVS object: a single object as
+     * { "keyValue":[...] }, an array as a list of them, same as the in-memory path. Every attribute
+     * of the header is written, in header order.
+     */
+    private static class SectionJsonWriter implements KeyValueJsonReader.Handler {
+        private final JsonStreamWriter json;
+        private final ConversionMetrics metrics;
+        private boolean array;
+
+        SectionJsonWriter(JsonStreamWriter json, ConversionMetrics metrics) {
+            this.json = json;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void startSection(String name, boolean array) throws IOException {
+            this.array = array;
+            json.name(name);
+            if (array) {
+                json.beginArray();
+            }
+        }
+
+        @Override
+        public void startRow() throws IOException {
+            json.beginObject().name("keyValue").beginArray();
+        }
+
+        @Override
+        public void cell(String attribute, String value) throws IOException {
+            json.beginObject();
+            json.name("attribute").value(attribute);
+            json.name("value").value(value);
+            json.endObject();
+            metrics.addCells(1);
+        }
+
+        @Override
+        public void endRow() throws IOException {
+            json.endArray().endObject();
+            metrics.addRows(1);
+        }
+
+        @Override
+        public void endSection() throws IOException {
+            if (array) {
+                json.endArray();
+            }
         }
     }
 }
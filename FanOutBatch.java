@@ -0,0 +1,429 @@
+package com.example;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts every request in the input folder to all output formats in one go: each file is
+ * parsed once (FanOutPipeline) and its rows are written concurrently as
+ *
+ *   <name>.xlsx            a sheet per CVS section, like JsonToExcelBatch
+ *   <name>-<section>.csv   a CSV per CVS section, header of all its attributes
+ *   <name>.json            the normalized benefitRequest JSON, like KeyValueTableIO writes it
+ *
+ * instead of running JsonToExcelBatch and requestJSONtoCSV over the same inputs, each with its own
+ * parse. The workbook and the CSVs need each section complete before they write it, so they share
+ * one buffer per section, which both replay in parallel on their own threads once the section is
+ * complete; the JSON is streamed on a thread of its own. The parser feeds them through bounded
+ * queues, so the slowest output sets the pace and memory stays flat.
+ */
+public class FanOutBatch {
+
+    // Adjust input/output directories as needed
+    private static final String INPUT_DIR  = "C:/Development/myCode/inputJson";
+    private static final String OUTPUT_DIR = "C:/Development/myCode/outputFanOut";
+
+    // Which outputs to write
+    private static final boolean WRITE_XLSX = true;
+    private static final boolean WRITE_CSV = true;
+    private static final boolean WRITE_JSON = true;
+
+    // Batches of parsed rows each output may fall behind the parser before the parser waits
+    private static final int QUEUE_CAPACITY = 16;
+
+    // Files are converted concurrently too; each one keeps the parser and every output busy
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+    private static final long MEMORY_BUDGET = (long) (Runtime.getRuntime().maxMemory() * 0.7);
+    private static final double HEAP_FACTOR = 2.0;
+
+    // Per-phase timings, volumes and peak heap of each batch, written next to the outputs
+    private static final String RUN_REPORT = "run-report.json";
+
+    public static void main(String[] args) {
+        try {
+            File inputDir = new File(INPUT_DIR);
+            File[] jsonFiles = inputDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".json"));
+            if (jsonFiles == null || jsonFiles.length == 0) {
+                System.out.println("No JSON files found in " + INPUT_DIR);
+                return;
+            }
+
+            File outputDir = new File(OUTPUT_DIR);
+            if (!outputDir.exists()) {
+                boolean created = outputDir.mkdirs();
+                if (created) {
+                    System.out.println("Created output directory: " + OUTPUT_DIR);
+                }
+            }
+
+            RunReport.begin();
+            BatchExecutor executor = new BatchExecutor(PARALLELISM, MEMORY_BUDGET, HEAP_FACTOR);
+            List<BatchExecutor.Result> results = executor.run(Arrays.asList(jsonFiles),
+                    jsonFile -> new File(outputDir, jsonFile.getName().replaceFirst("[.][^.]+$", "") + ".xlsx"),
+                    FanOutBatch::convert);
+            BatchExecutor.printSummary(results);
+            RunReport.write(new File(outputDir, RUN_REPORT));
+
+            System.out.println("All conversions finished.");
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Converts one request file; excelFile names the workbook, the other outputs go next to it
+     * with the same base name.
+     */
+    static void convert(File jsonFile, File excelFile) throws Exception {
+        ConversionMetrics metrics = ConversionMetrics.start(jsonFile);
+        File dir = excelFile.getAbsoluteFile().getParentFile();
+        String baseName = excelFile.getName().replaceFirst("[.][^.]+$", "");
+
+        try {
+            // The workbook and the CSVs are written from the same buffered sections
+            List<SectionOutput> sectionOutputs = new ArrayList<>();
+            if (WRITE_XLSX) {
+                sectionOutputs.add(new WorkbookOutput(excelFile, metrics));
+            }
+            if (WRITE_CSV) {
+                sectionOutputs.add(new CsvOutput(dir, baseName));
+            }
+            List<FanOutPipeline.Sink> sinks = new ArrayList<>();
+            if (!sectionOutputs.isEmpty()) {
+                sinks.add(new SectionSink(sectionOutputs));
+            }
+            File normalizedFile = new File(dir, baseName + ".json");
+            if (WRITE_JSON && normalizedFile.getCanonicalFile().equals(jsonFile.getCanonicalFile())) {
+                System.out.println("Skipping JSON output for " + jsonFile.getName() + ": it would overwrite the input.");
+            } else if (WRITE_JSON) {
+                sinks.add(new JsonSink(normalizedFile));
+            }
+
+            long rows = metrics.time("parse", () -> new FanOutPipeline(QUEUE_CAPACITY).run(jsonFile, sinks));
+            metrics.addRows(rows);
+        } catch (Exception e) {
+            metrics.fail(e);
+            throw e;
+        } finally {
+            metrics.finish(excelFile);
+        }
+    }
+
+    /**
+     * Collects each section's rows in a RowBuffer while its columns are still being discovered,
+     * then replays the complete section once into every SectionOutput. Sections without columns
+     * are skipped, like the converters do.
+     */
+    private static class SectionSink implements FanOutPipeline.Sink {
+        private final List<SectionOutput> outputs;
+        // Threads for the outputs after the first
+        private final ExecutorService writers;
+        private String name;
+        private boolean array;
+        private ColumnDictionary.Columns columns;
+        private RowBuffer rows;
+        private long rowCount;
+        private int[] rowColumns = new int[16];
+        private String[] rowValues = new String[16];
+        private int rowSize;
+        private int sections;
+
+        SectionSink(List<SectionOutput> outputs) {
+            this.outputs = outputs;
+            this.writers = Executors.newFixedThreadPool(Math.max(1, outputs.size() - 1));
+        }
+
+        @Override
+        public void startSection(String name, boolean array) throws IOException {
+            this.name = name;
+            this.array = array;
+            this.columns = new ColumnDictionary().newColumns();
+            this.rows = new RowBuffer();
+            this.rowCount = 0;
+            sections++;
+        }
+
+        @Override
+        public void startRow() {
+            rowSize = 0;
+        }
+
+        @Override
+        public void cell(String attribute, String value) {
+            if (rowSize == rowColumns.length) {
+                rowColumns = Arrays.copyOf(rowColumns, rowSize * 2);
+                rowValues = Arrays.copyOf(rowValues, rowSize * 2);
+            }
+            rowColumns[rowSize] = columns.add(attribute);
+            rowValues[rowSize] = value;
+            rowSize++;
+        }
+
+        @Override
+        public void endRow() throws IOException {
+            rows.append(rowColumns, rowValues, rowSize);
+            rowCount++;
+        }
+
+        @Override
+        public void endSection() throws IOException {
+            try {
+                if (!array && rowCount == 0) {
+                    System.out.println("Skipping " + name + ": no 'keyValue' found.");
+                } else if (columns.size() > 0) {
+                    writeSection(columns.names());
+                }
+            } finally {
+                rows.close();
+                rows = null;
+            }
+        }
+
+        /**
+         * Replays the section into every output, each with its own cursor over the buffered rows:
+         * the first output on this thread, the others on their own threads, so the workbook and
+         * the CSV are written in parallel. Returns once all of them are done.
+         */
+        private void writeSection(List<String> header) throws IOException {
+            List<RowBuffer.Cursor> cursors = new ArrayList<>();
+            try {
+                for (int i = 0; i < outputs.size(); i++) {
+                    cursors.add(rows.openCursor());
+                }
+                List<Future<?>> others = new ArrayList<>();
+                for (int i = 1; i < outputs.size(); i++) {
+                    SectionOutput output = outputs.get(i);
+                    RowBuffer.Cursor cursor = cursors.get(i);
+                    others.add(writers.submit(() -> {
+                        replay(output, cursor, header);
+                        return null;
+                    }));
+                }
+
+                // Every writer is waited for (it reads the buffer) before anything is thrown
+                IOException failure = null;
+                try {
+                    replay(outputs.get(0), cursors.get(0), header);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                for (Future<?> other : others) {
+                    try {
+                        other.get();
+                    } catch (ExecutionException e) {
+                        IOException cause = (e.getCause() instanceof IOException)
+                                ? (IOException) e.getCause() : new IOException(e.getCause());
+                        if (failure == null) {
+                            failure = cause;
+                        } else {
+                            failure.addSuppressed(cause);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while writing " + name);
+                    }
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            } finally {
+                for (RowBuffer.Cursor cursor : cursors) {
+                    try { cursor.close(); } catch (IOException e) { /* ignore */ }
+                }
+            }
+        }
+
+        /**
+         * Writes the section's rows to one output as full rows, values[c] being the value of
+         * header column c (null where the row doesn't have it).
+         */
+        private void replay(SectionOutput output, RowBuffer.Cursor cursor, List<String> header) throws IOException {
+            output.startSection(name, sections, header);
+            String[] values = new String[header.size()];
+            while (cursor.next()) {
+                Arrays.fill(values, null);
+                for (int i = 0; i < cursor.size(); i++) {
+                    values[cursor.column(i)] = cursor.value(i);
+                }
+                output.addRow(values);
+            }
+            output.endSection();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writers.shutdown();
+            // Every output is finished (or closed) even if one of them fails
+            IOException failure = null;
+            for (SectionOutput output : outputs) {
+                try {
+                    output.finish(sections);
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        @Override
+        public void abort() {
+            writers.shutdownNow();
+            if (rows != null) {
+                try { rows.close(); } catch (IOException e) { /* ignore */ }
+            }
+            for (SectionOutput output : outputs) {
+                output.abort();
+            }
+        }
+    }
+
+    /**
+     * One format SectionSink writes the complete sections to.
+     */
+    private interface SectionOutput {
+        /** index counts the sections of the file from 1, including skipped ones. */
+        void startSection(String name, int index, List<String> header) throws IOException;
+
+        void addRow(String[] values) throws IOException;
+
+        void endSection() throws IOException;
+
+        void finish(int sections) throws IOException;
+
+        void abort();
+    }
+
+    /**
+     * One workbook (split like JsonToExcelBatch's past the row limits), a sheet per section.
+     */
+    private static class WorkbookOutput implements SectionOutput {
+        private final ShardedWorkbookWriter writer;
+
+        WorkbookOutput(File excelFile, ConversionMetrics metrics) {
+            this.writer = JsonToExcelBatch.newWorkbookWriter(excelFile, metrics);
+        }
+
+        @Override
+        public void startSection(String name, int index, List<String> header) throws IOException {
+            writer.startSheet(name, header);
+        }
+
+        @Override
+        public void addRow(String[] values) throws IOException {
+            writer.addRow(values);
+        }
+
+        @Override
+        public void endSection() throws IOException {
+            writer.endSheet();
+        }
+
+        @Override
+        public void finish(int sections) throws IOException {
+            try {
+                if (sections == 0) {
+                    System.out.println("No 'CVS' sections found, no workbook written.");
+                    return;
+                }
+                for (File excelFile : writer.finish()) {
+                    System.out.println("Created Excel: " + excelFile.getAbsolutePath());
+                }
+            } finally {
+                writer.close();
+            }
+        }
+
+        @Override
+        public void abort() {
+            writer.close();
+        }
+    }
+
+    /**
+     * A CSV per section, named <baseName>-<section>.csv. Section names come from the request, so
+     * they go through {@link KeyValueTableIO.SectionFiles}, which keeps them inside dir and unique.
+     */
+    private static class CsvOutput implements SectionOutput {
+        private final KeyValueTableIO.SectionFiles files;
+        private File csvFile;
+        private CSVPrinter printer;
+
+        CsvOutput(File dir, String baseName) {
+            files = new KeyValueTableIO.SectionFiles(dir, baseName, ".csv");
+        }
+
+        @Override
+        public void startSection(String name, int index, List<String> header) throws IOException {
+            csvFile = files.next(name, index);
+            printer = new CSVPrinter(newWriter(csvFile), CSVFormat.DEFAULT.builder().setHeader(header.toArray(new String[0])).build());
+        }
+
+        @Override
+        public void addRow(String[] values) throws IOException {
+            printer.printRecord((Object[]) values);
+        }
+
+        @Override
+        public void endSection() throws IOException {
+            printer.close();
+            printer = null;
+            System.out.println("Created CSV: " + csvFile.getAbsolutePath());
+        }
+
+        @Override
+        public void finish(int sections) {
+        }
+
+        @Override
+        public void abort() {
+            if (printer != null) {
+                try { printer.close(); } catch (IOException e) { /* ignore */ }
+            }
+        }
+    }
+
+    /**
+     * The normalized benefitRequest JSON, streamed as the rows arrive (see RequestJsonSink).
+     */
+    private static class JsonSink extends RequestJsonSink {
+        private final File jsonFile;
+
+        JsonSink(File jsonFile) throws IOException {
+            super(newWriter(jsonFile));
+            this.jsonFile = jsonFile;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            super.finish();
+            System.out.println("Created JSON: " + jsonFile.getAbsolutePath());
+        }
+    }
+
+    private static Writer newWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+}
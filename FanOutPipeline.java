@@ -0,0 +1,190 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a request file once and hands its content to several sinks (XLSX, CSV, JSON, ...) that
+ * write their outputs concurrently. The calling thread tokenizes the file (MappedJsonReader) and
+ * groups the events into batches; every sink has its own thread and its own bounded queue of
+ * batches. When a sink falls queueCapacity batches behind, the parser waits for it, so a slow sink
+ * slows the run down instead of letting the row stream pile up in memory.
+ *
+ * Batches of RowEvents are immutable and shared by all sinks. An exception in a sink stops the whole run and
+ * is rethrown; every sink that did not finish is then aborted.
+ */
+public class FanOutPipeline {
+
+    /**
+     * Receives the content of a request, in document order, on its own thread.
+     */
+    public interface Sink extends KeyValueJsonReader.Handler {
+        /** Every event has been delivered: complete the output. */
+        void finish() throws IOException;
+
+        /** The run failed: release whatever is open. Partial output may be left behind. */
+        default void abort() {
+        }
+    }
+
+    // Events per queue entry: large enough that queue hand-offs cost little per row
+    private static final int BATCH_SIZE = 512;
+    private static final RowEvent[] END = new RowEvent[0];
+
+    private final int queueCapacity;
+
+    /**
+     * @param queueCapacity batches each sink may fall behind the parser
+     */
+    public FanOutPipeline(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Reads jsonFile once and delivers it to every sink. Returns the number of data rows.
+     */
+    public long run(File jsonFile, List<? extends Sink> sinks) throws Exception {
+        List<BlockingQueue<RowEvent[]>> queues = new ArrayList<>();
+        List<Future<?>> consumers = new ArrayList<>();
+        ExecutorService threads = Executors.newFixedThreadPool(Math.max(1, sinks.size()));
+        boolean success = false;
+
+        try {
+            for (Sink sink : sinks) {
+                BlockingQueue<RowEvent[]> queue = new ArrayBlockingQueue<>(queueCapacity);
+                queues.add(queue);
+                consumers.add(threads.submit(() -> consume(queue, sink)));
+            }
+
+            Broadcaster broadcaster = new Broadcaster(queues, consumers);
+            MappedJsonReader.read(jsonFile, new RowEvent.Collector(broadcaster));
+            broadcaster.flush();
+            for (int i = 0; i < queues.size(); i++) {
+                enqueue(queues.get(i), END, consumers.get(i));
+            }
+
+            for (Future<?> consumer : consumers) {
+                await(consumer);
+            }
+            success = true;
+            return broadcaster.rows;
+        } finally {
+            threads.shutdownNow();
+            if (!success) {
+                threads.awaitTermination(10, TimeUnit.SECONDS);
+                for (int i = 0; i < sinks.size(); i++) {
+                    if (!finished(consumers.size() > i ? consumers.get(i) : null)) {
+                        sinks.get(i).abort();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sink thread: replays batches until the end marker, then finishes the sink.
+     */
+    private static Void consume(BlockingQueue<RowEvent[]> queue, Sink sink) throws Exception {
+        while (true) {
+            RowEvent[] batch = queue.take();
+            if (batch == END) {
+                sink.finish();
+                return null;
+            }
+            for (RowEvent event : batch) {
+                event.deliver(sink);
+            }
+        }
+    }
+
+    /**
+     * Blocks while the queue is full, but gives up (rethrowing its error) if the sink died.
+     */
+    private static void enqueue(BlockingQueue<RowEvent[]> queue, RowEvent[] batch, Future<?> consumer) throws Exception {
+        do {
+            if (consumer.isDone()) {
+                await(consumer);
+                throw new IOException("Sink stopped before the end of the input");
+            }
+        } while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS));
+    }
+
+    private static void await(Future<?> consumer) throws Exception {
+        try {
+            consumer.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private static boolean finished(Future<?> consumer) {
+        if (consumer == null || !consumer.isDone() || consumer.isCancelled()) {
+            return false;
+        }
+        try {
+            consumer.get();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parser side: collects the events (RowEvent.Collector makes one per row rather than one per
+     * cell) and publishes them to every queue, BATCH_SIZE at a time.
+     */
+    private static class Broadcaster implements RowEvent.Collector.Consumer {
+        private final List<BlockingQueue<RowEvent[]>> queues;
+        private final List<Future<?>> consumers;
+        private RowEvent[] batch = new RowEvent[BATCH_SIZE];
+        private int batchSize;
+        long rows;
+
+        Broadcaster(List<BlockingQueue<RowEvent[]>> queues, List<Future<?>> consumers) {
+            this.queues = queues;
+            this.consumers = consumers;
+        }
+
+        @Override
+        public void accept(RowEvent event) throws IOException {
+            if (event.getKind() == RowEvent.Kind.ROW) {
+                rows++;
+            }
+            batch[batchSize++] = event;
+            if (batchSize == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (batchSize == 0) return;
+            RowEvent[] full = (batchSize == batch.length) ? batch : Arrays.copyOf(batch, batchSize);
+            try {
+                for (int i = 0; i < queues.size(); i++) {
+                    enqueue(queues.get(i), full, consumers.get(i));
+                }
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a sink");
+            } catch (Exception e) {
+                throw new IOException("Sink failed: " + e.getMessage(), e);
+            }
+            batch = new RowEvent[BATCH_SIZE];
+            batchSize = 0;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example;
+
+import java.io.File;
+
+/**
+ * Converts one input file into one output file.
+ * Implementations throw on failure so callers can report and isolate it per file.
+ */
+@FunctionalInterface
+public interface FileConverter {
+    void convert(File input, File output) throws Exception;
+}
@@ -0,0 +1,144 @@
+package com.example;
+
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Minimal streaming JSON writer. Produces the same layout as org.json's toString(indentFactor),
+ * but writes every token straight to the underlying Writer, so nothing but the current nesting
+ * level is kept in memory.
+ *
+ * Usage:
+ *   json.beginObject().name("keyValue").beginArray() ... .endArray().endObject();
+ */
+public class JsonStreamWriter implements Closeable, Flushable {
+
+    private final Writer out;
+    private final int indentFactor;
+
+    // One entry per open object/array: true while that scope has no members yet
+    private final Deque<Boolean> scopes = new ArrayDeque<>();
+    private boolean afterName;
+
+    public JsonStreamWriter(Writer out, int indentFactor) {
+        this.out = out;
+        this.indentFactor = indentFactor;
+    }
+
+    public JsonStreamWriter beginObject() throws IOException {
+        beforeValue();
+        out.write('{');
+        scopes.push(Boolean.TRUE);
+        return this;
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+        return endScope('}');
+    }
+
+    public JsonStreamWriter beginArray() throws IOException {
+        beforeValue();
+        out.write('[');
+        scopes.push(Boolean.TRUE);
+        return this;
+    }
+
+    public JsonStreamWriter endArray() throws IOException {
+        return endScope(']');
+    }
+
+    public JsonStreamWriter name(String name) throws IOException {
+        beforeMember();
+        out.write(JSONObject.quote(name));
+        out.write(':');
+        if (indentFactor > 0) {
+            out.write(' ');
+        }
+        afterName = true;
+        return this;
+    }
+
+    public JsonStreamWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        out.write(JSONObject.quote(value));
+        return this;
+    }
+
+    public JsonStreamWriter value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    public JsonStreamWriter value(double value) throws IOException {
+        beforeValue();
+        out.write(JSONObject.numberToString(value));
+        return this;
+    }
+
+    public JsonStreamWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonStreamWriter nullValue() throws IOException {
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private JsonStreamWriter endScope(char closing) throws IOException {
+        boolean empty = scopes.pop();
+        if (!empty) {
+            newline();
+        }
+        out.write(closing);
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else if (!scopes.isEmpty()) {
+            beforeMember();
+        }
+    }
+
+    private void beforeMember() throws IOException {
+        if (scopes.peek()) {
+            scopes.pop();
+            scopes.push(Boolean.FALSE);
+        } else {
+            out.write(',');
+        }
+        newline();
+    }
+
+    private void newline() throws IOException {
+        if (indentFactor <= 0) return;
+        out.write('\n');
+        for (int i = 0, n = scopes.size() * indentFactor; i < n; i++) {
+            out.write(' ');
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example;
 
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFColor;
 import org.apache.poi.xssf.usermodel.XSSFFont;
@@ -8,11 +9,24 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.awt.Color;
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * Scans an input folder for JSON files, creates one Excel file per JSON.
@@ -35,6 +49,8 @@ import java.util.*;
  * We skip a dedicated sheet for "benefitRequest" and only create sheets for each child object under CVS.
  * If the child is a single object with "keyValue", we create a single-row sheet.
  * If the child is an array, we create a multi-row sheet.
+ *
+ * .jsonl files hold one such document per line and are converted line by line (see JSONL_MERGE).
  */
 public class JsonToExcelBatch {
 
@@ -42,7 +58,89 @@ public class JsonToExcelBatch {
     private static final String INPUT_DIR  = "C:/Development/myCode/inputJson";
     private static final String OUTPUT_DIR = "C:/Development/myCode/outputExcel";
 
+    // Mapped input tokenizes the file's UTF-8 bytes directly (MappedJsonReader) and writes each CVS
+    // section as soon as it ends, instead of decoding the file into a String and parsing a JSONObject
+    // tree; sheets then follow the order of the CVS keys in the file. Turn off to use the DOM path.
+    private static final boolean MAPPED_INPUT = true;
+
+    // A section's rows are buffered until its header is complete: compactly in memory up to
+    // ROW_BUFFER_BYTES per section, then in a temp file (RowBuffer), so arrays larger than the
+    // heap still convert.
+    private static final long ROW_BUFFER_BYTES = RowBuffer.DEFAULT_SPILL_THRESHOLD;
+
+    // Streaming output keeps only ROW_ACCESS_WINDOW rows per sheet on the heap and
+    // flushes older rows to temp files, so large arrays don't have to fit in memory.
+    private static final boolean STREAMING_OUTPUT = true;
+    private static final int ROW_ACCESS_WINDOW = 100;
+
+    // Streaming output normally writes every value inline in its cell. With the shared-strings table
+    // each distinct value is stored once and cells refer to it: repetitive data (RTL, MAIL, N, ...)
+    // gets ~10% smaller on disk and ~25% faster to read back with the SAX reader, but POI's table
+    // makes writing ~60% slower and stays on the heap, so it is opt-in.
+    // (In-memory workbooks always share strings.)
+    private static final boolean SHARED_STRINGS = false;
+
+    // ZIP level of the .xlsx: FAST for throughput-sensitive runs, MAX for archival output.
+    // PARALLEL_ZIP deflates the sheet parts of large workbooks on several threads.
+    private static final XlsxOutput.Compression ZIP_COMPRESSION = XlsxOutput.Compression.DEFAULT;
+    private static final boolean PARALLEL_ZIP = true;
+
+    // Files are converted concurrently, limited by thread count and an estimated heap budget.
+    // HEAP_FACTOR is the heap needed per byte of JSON (the parsed DOM dominates; mapped input only
+    // buffers the current section, compactly).
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final long MEMORY_BUDGET = (long) (Runtime.getRuntime().maxMemory() * 0.7);
+    private static final double HEAP_FACTOR = STREAMING_OUTPUT ? (MAPPED_INPUT ? 2.0 : 8.0) : 20.0;
+
+    // Build the sheets of one workbook concurrently (header discovery, values, widths),
+    // then write them in the original key order. Pays off for requests with many CVS sections.
+    // At most SHEET_WINDOW sections are built ahead of the one being written, and they share
+    // ROW_BUFFER_BYTES between them, so the rows held stay as bounded as in the serial path.
+    // With MAPPED_INPUT the sections are read one after another, so there each finished section
+    // is written on a thread of its own while the reader goes on with the next ones.
+    private static final boolean PARALLEL_SHEETS = false;
+    private static final int SHEET_WINDOW = Runtime.getRuntime().availableProcessors();
+
+    // A sheet holds at most SHEET_MAX_ROWS data rows (Excel's limit); longer sections continue on
+    // sheets named "<name>#2", "<name>#3", ... Once a workbook holds WORKBOOK_MAX_ROWS rows or
+    // WORKBOOK_MAX_CHARS characters of cell text it is written out and the rest goes to
+    // <name>.part2.xlsx, <name>.part3.xlsx, ... ExcelToJsonBatch joins both kinds of shards again.
+    private static final int SHEET_MAX_ROWS = ShardedWorkbookWriter.MAX_SHEET_ROWS;
+    private static final long WORKBOOK_MAX_ROWS = 4_000_000;
+    private static final long WORKBOOK_MAX_CHARS = 256L * 1024 * 1024;
+
+    // EXACT uses autoSizeColumn (slow, needs AWT fonts), ESTIMATED tracks widths while writing, OFF skips sizing
+    private static final ColumnWidths.Strategy COLUMN_WIDTHS = ColumnWidths.Strategy.ESTIMATED;
+
+    // Per-phase timings, volumes and peak heap of each batch, written next to the outputs
+    private static final String RUN_REPORT = "run-report.json";
+
+    // Known attribute order per (clientCode, sheet), so array sheets can be written in a single pass:
+    // header from the registry, each row written as it is read, nothing buffered. An attribute the
+    // registry doesn't know widens the header while it is still in memory; later than that, the
+    // request is converted again in two passes. (PARALLEL_SHEETS always buffers.)
+    // Loaded by main(); conversions called from elsewhere (e.g. benchmarks) run without it.
+    private static final String SCHEMA_REGISTRY = "schema-registry.json";
+    private static volatile SchemaRegistry schemaRegistry;
+
+    // .jsonl files hold one benefitRequest per line. JSONL_MERGE writes all requests of a file into
+    // shared sheets (with transactionID/clientCode columns) instead of one workbook per request.
+    // At most JSONL_QUEUE_CAPACITY parsed lines wait for the writer at any time.
+    private static final boolean JSONL_MERGE = false;
+    private static final int JSONL_QUEUE_CAPACITY = 64;
+
+    // The line workers of all JSONL files, so files the BatchExecutor converts side by side still
+    // have at most PARALLELISM request workbooks open between them (not PARALLELISM each)
+    private static final ExecutorService JSONL_WORKERS = Executors.newFixedThreadPool(PARALLELISM, task -> {
+        Thread thread = new Thread(task, "jsonl-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public static void main(String[] args) {
+        // --watch keeps running and converts files as they land in INPUT_DIR
+        boolean watch = args.length > 0 && "--watch".equals(args[0]);
+
         try {
             // 1) Ensure input directory exists
             File inputDir = new File(INPUT_DIR);
@@ -51,18 +149,13 @@ public class JsonToExcelBatch {
                 if (created) {
                     System.out.println("Created input directory: " + INPUT_DIR);
                 }
-                System.out.println("Please place your .json files in that folder, then run again.");
-                return;
-            }
-
-            // 2) Gather all .json files in the input directory
-            File[] jsonFiles = inputDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".json"));
-            if (jsonFiles == null || jsonFiles.length == 0) {
-                System.out.println("No JSON files found in " + INPUT_DIR);
-                return;
+                if (!watch) {
+                    System.out.println("Please place your .json files in that folder, then run again.");
+                    return;
+                }
             }
 
-            // 3) Ensure output directory exists
+            // 2) Ensure output directory exists (it also holds the schema registry)
             File outputDir = new File(OUTPUT_DIR);
             if (!outputDir.exists()) {
                 boolean created = outputDir.mkdirs();
@@ -70,16 +163,32 @@ public class JsonToExcelBatch {
                     System.out.println("Created output directory: " + OUTPUT_DIR);
                 }
             }
+            schemaRegistry = SchemaRegistry.load(new File(outputDir, SCHEMA_REGISTRY));
 
-            // 4) Convert each JSON file in a loop
-            for (File jsonFile : jsonFiles) {
-                String baseName = jsonFile.getName().replaceFirst("[.][^.]+$", "");
-                File excelFile = new File(outputDir, baseName + ".xlsx");
+            if (watch) {
+                BatchExecutor executor = new BatchExecutor(PARALLELISM, MEMORY_BUDGET, HEAP_FACTOR);
+                new WatchDaemon(inputDir, outputDir, Arrays.asList(".json", ".jsonl"), ".xlsx", executor,
+                        JsonToExcelBatch::convertAnyJsonToExcel).run();
+                return;
+            }
 
-                System.out.println("Converting " + jsonFile.getName() + " to " + excelFile.getName());
-                convertJsonToExcel(jsonFile, excelFile);
+            // 3) Gather all .json and .jsonl files in the input directory
+            File[] jsonFiles = inputDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".json")
+                    || name.toLowerCase().endsWith(".jsonl"));
+            if (jsonFiles == null || jsonFiles.length == 0) {
+                System.out.println("No JSON files found in " + INPUT_DIR);
+                return;
             }
 
+            // 4) Convert the JSON files, several at a time within the heap budget
+            RunReport.begin();
+            BatchExecutor executor = new BatchExecutor(PARALLELISM, MEMORY_BUDGET, HEAP_FACTOR);
+            List<BatchExecutor.Result> results = executor.run(Arrays.asList(jsonFiles),
+                    jsonFile -> new File(outputDir, jsonFile.getName().replaceFirst("[.][^.]+$", "") + ".xlsx"),
+                    JsonToExcelBatch::convertAnyJsonToExcel);
+            BatchExecutor.printSummary(results);
+            RunReport.write(new File(outputDir, RUN_REPORT));
+
             System.out.println("All conversions finished.");
 
         } catch (Exception e) {
@@ -87,192 +196,880 @@ public class JsonToExcelBatch {
         }
     }
 
+    /**
+     * Dispatches on the extension: .jsonl files hold many requests, anything else holds one.
+     */
+    static void convertAnyJsonToExcel(File jsonFile, File excelFile) throws Exception {
+        if (jsonFile.getName().toLowerCase().endsWith(".jsonl")) {
+            convertJsonLinesToExcel(jsonFile, excelFile);
+        } else {
+            convertJsonToExcel(jsonFile, excelFile);
+        }
+    }
+
     /**
      * Converts a single JSON file to Excel.
      */
-    private static void convertJsonToExcel(File jsonFile, File excelFile) {
-        Workbook workbook = null;
-        FileOutputStream fos = null;
+    static void convertJsonToExcel(File jsonFile, File excelFile) throws Exception {
+        convertJsonToExcel(jsonFile, excelFile, true);
+    }
+
+    /**
+     * Same as convertJsonToExcel, but always writes exactly one workbook (sheets are still split at
+     * SHEET_MAX_ROWS), for callers that hand the result on as one file, like ConversionService.
+     */
+    static void convertJsonToSingleWorkbook(File jsonFile, File excelFile) throws Exception {
+        convertJsonToExcel(jsonFile, excelFile, false);
+    }
+
+    /**
+     * splitWorkbooks continues in <name>.part2.xlsx, ... past the WORKBOOK_ limits.
+     */
+    private static void convertJsonToExcel(File jsonFile, File excelFile, boolean splitWorkbooks) throws Exception {
+        ConversionMetrics metrics = ConversionMetrics.start(jsonFile);
 
         try {
-            // Read JSON from file
-            String jsonString = new String(Files.readAllBytes(Paths.get(jsonFile.toURI())));
-            JSONObject root = new JSONObject(jsonString);
-
-            // Dig into the structure: benefitRequest -> dataSet -> CVS
-            JSONObject benefitRequest = root.optJSONObject("benefitRequest");
-            if (benefitRequest == null) {
-                System.out.println("No 'benefitRequest' object found in " + jsonFile.getName());
-                return;
+            if (MAPPED_INPUT) {
+                writeRequestFile(jsonFile, excelFile, splitWorkbooks, metrics);
+            } else {
+                // Read JSON from file
+                JSONObject root = metrics.time("parse", () -> {
+                    String jsonString = new String(Files.readAllBytes(Paths.get(jsonFile.toURI())), StandardCharsets.UTF_8);
+                    return new JSONObject(jsonString);
+                });
+
+                writeRequestWorkbook(root, jsonFile.getName(), excelFile, splitWorkbooks, metrics);
             }
-            JSONObject dataSet = benefitRequest.optJSONObject("dataSet");
-            if (dataSet == null) {
-                System.out.println("No 'dataSet' object found in " + jsonFile.getName());
+
+        } catch (Exception e) {
+            metrics.fail(e);
+            throw e;
+        } finally {
+            metrics.finish(excelFile);
+        }
+
+        // Keep attributes learned from this file for the next run
+        if (schemaRegistry != null) {
+            schemaRegistry.save();
+        }
+    }
+
+    /**
+     * Writes one parsed benefitRequest document as a workbook with a sheet per CVS child.
+     * sourceName is only used in messages. Returns the files written: none if there is no CVS.
+     */
+    private static List<File> writeRequestWorkbook(JSONObject root, String sourceName, File excelFile,
+                                                   boolean splitWorkbooks, ConversionMetrics metrics) throws Exception {
+        try {
+            return writeRequestWorkbook(root, sourceName, excelFile, splitWorkbooks, metrics, true);
+        } catch (UnknownAttributeException e) {
+            System.out.println(e.getMessage() + " in " + sourceName + "; writing it again in two passes.");
+            return writeRequestWorkbook(root, sourceName, excelFile, splitWorkbooks, metrics, false);
+        }
+    }
+
+    /**
+     * singlePass writes array sections the schema registry knows straight from the JSON.
+     */
+    private static List<File> writeRequestWorkbook(JSONObject root, String sourceName, File excelFile,
+                                                   boolean splitWorkbooks, ConversionMetrics metrics,
+                                                   boolean singlePass) throws Exception {
+        // Dig into the structure: benefitRequest -> dataSet -> CVS
+        JSONObject cvs = findCvs(root, sourceName);
+        if (cvs == null) {
+            return Collections.emptyList();
+        }
+        String clientCode = root.getJSONObject("benefitRequest").optString("clientCode", "");
+
+        try (ShardedWorkbookWriter writer = newWorkbookWriter(excelFile, splitWorkbooks, metrics)) {
+            metrics.time("build", () -> {
+                // Attribute ids are shared by all sheets of this workbook
+                ColumnDictionary dictionary = new ColumnDictionary();
+
+                if (PARALLEL_SHEETS) {
+                    createSheetsInParallel(writer, dictionary, metrics, clientCode, cvs);
+                } else {
+                    // For each key under CVS (a single object or an array of "keyValue" elements) create a sheet.
+                    for (String childKey : cvs.keySet()) {
+                        Object childValue = cvs.get(childKey);
+                        List<String> known = (singlePass && childValue instanceof JSONArray)
+                                ? knownAttributes(clientCode, childKey) : Collections.emptyList();
+                        if (!known.isEmpty()) {
+                            writeKnownSection(writer, metrics, dictionary, clientCode, childKey,
+                                    (JSONArray) childValue, known);
+                            continue;
+                        }
+                        SheetBuffer sheet = buildSection(dictionary, clientCode, childKey, childValue, ROW_BUFFER_BYTES);
+                        if (sheet != null) {
+                            writeSection(writer, metrics, sheet);
+                        }
+                    }
+                }
+            });
+
+            // Write the (last) workbook; each one goes to a temp file that is renamed into place
+            List<File> written = writer.finish();
+            printCreated(written);
+            return written;
+        }
+    }
+
+    /**
+     * Reads a request file with MappedJsonReader and writes each CVS section as a sheet once the
+     * section is complete, so only one section is held (in a RowBuffer) at a time. Array sections
+     * the schema registry knows are written while they are read, without buffering.
+     */
+    private static void writeRequestFile(File jsonFile, File excelFile, boolean splitWorkbooks,
+                                         ConversionMetrics metrics) throws IOException {
+        try {
+            writeRequestFile(jsonFile, excelFile, splitWorkbooks, metrics, true);
+        } catch (UnknownAttributeException e) {
+            System.out.println(e.getMessage() + " in " + jsonFile.getName() + "; converting it again in two passes.");
+            writeRequestFile(jsonFile, excelFile, splitWorkbooks, metrics, false);
+        }
+    }
+
+    private static void writeRequestFile(File jsonFile, File excelFile, boolean splitWorkbooks,
+                                         ConversionMetrics metrics, boolean singlePass) throws IOException {
+        try (ShardedWorkbookWriter writer = newWorkbookWriter(excelFile, splitWorkbooks, metrics)) {
+            RequestSheetHandler handler = new RequestSheetHandler(writer, metrics, singlePass);
+            try {
+                metrics.time("parse", () -> MappedJsonReader.read(jsonFile, handler));
+                handler.awaitWrites();
+            } finally {
+                handler.close();
+            }
+            if (!handler.sectionFound) {
+                System.out.println("No 'CVS' sections found in " + jsonFile.getName());
                 return;
             }
-            JSONObject cvs = dataSet.optJSONObject("CVS");
-            if (cvs == null) {
-                System.out.println("No 'CVS' object found in " + jsonFile.getName());
+
+            // Write the (last) workbook; each one goes to a temp file that is renamed into place
+            printCreated(writer.finish());
+        }
+    }
+
+    /**
+     * Buffers the rows of each section the reader reports and writes its sheet at the section's end,
+     * or (singlePass) writes the rows of a known array section right away.
+     * Sections without columns are skipped, single objects without "keyValue" with a message.
+     *
+     * With PARALLEL_SHEETS finished sections are written in order on sheetWriter instead, up to
+     * maxPendingWrites of them behind the reader, and every section buffers (the workbook only
+     * takes rows from one thread).
+     */
+    private static class RequestSheetHandler implements KeyValueJsonReader.Handler {
+        private final ShardedWorkbookWriter writer;
+        private final ConversionMetrics metrics;
+        private final boolean singlePass;
+        // Attribute ids are shared by all sheets of this workbook
+        private final ColumnDictionary dictionary = new ColumnDictionary();
+        private final ExecutorService sheetWriter;
+        private final int maxPendingWrites = Math.max(1, SHEET_WINDOW - 1);
+        private final Deque<Future<?>> pendingWrites = new ArrayDeque<>();
+        // Set once the conversion failed: pending writes only release their buffers
+        private volatile boolean aborted;
+        private String clientCode = "";
+        private SheetBuffer sheet;
+        private KnownSchemaSheet knownSheet;
+        boolean sectionFound;
+
+        RequestSheetHandler(ShardedWorkbookWriter writer, ConversionMetrics metrics, boolean singlePass) {
+            this.writer = writer;
+            this.metrics = metrics;
+            this.singlePass = singlePass && !PARALLEL_SHEETS;
+            this.sheetWriter = PARALLEL_SHEETS ? Executors.newSingleThreadExecutor() : null;
+        }
+
+        @Override
+        public void property(String name, String value) {
+            if (name.equals("clientCode") && value != null) {
+                clientCode = value;
+            }
+        }
+
+        @Override
+        public void startSection(String name, boolean array) throws IOException {
+            sectionFound = true;
+            List<String> known = array ? knownAttributes(clientCode, name) : Collections.emptyList();
+            if (singlePass && !known.isEmpty()) {
+                knownSheet = new KnownSchemaSheet(writer, metrics, dictionary, name, known);
                 return;
             }
+            // In parallel, the section being read and the ones waiting to be written share the buffer bytes
+            long bufferBytes = (sheetWriter == null) ? ROW_BUFFER_BYTES : ROW_BUFFER_BYTES / (maxPendingWrites + 1);
+            sheet = new SheetBuffer(name, array, dictionary.newColumns(), bufferBytes);
+            known.forEach(sheet.columns::add);
+        }
 
-            // Create a workbook
-            workbook = new XSSFWorkbook();
+        @Override
+        public void startRow() {
+            if (knownSheet != null) {
+                knownSheet.startRow();
+            } else {
+                sheet.startRow();
+            }
+        }
 
-            // We'll create a custom CellStyle for the header row (tan color + borders).
-            CellStyle headerStyle = createHeaderStyle(workbook);
+        @Override
+        public void cell(String attribute, String value) {
+            if (knownSheet != null) {
+                knownSheet.cell(attribute, value);
+            } else {
+                sheet.cell(attribute, value);
+            }
+        }
 
-            // For each key under CVS, check if it is an object or array, then create a sheet.
-            for (String childKey : cvs.keySet()) {
-                Object childValue = cvs.get(childKey);
+        @Override
+        public void endRow() throws IOException {
+            if (knownSheet != null) {
+                knownSheet.endRow();
+            } else {
+                sheet.endRow();
+            }
+        }
 
-                // If it's a single object with "keyValue", create a single-row sheet
-                if (childValue instanceof JSONObject) {
-                    JSONObject obj = (JSONObject) childValue;
-                    if (obj.has("keyValue")) {
-                        createSheetFromKeyValueObject(workbook, childKey, obj, headerStyle);
-                    } else {
-                        // Not our expected structure, skip or handle differently
-                        System.out.println("Skipping " + childKey + ": no 'keyValue' found.");
+        @Override
+        public void endSection() throws IOException {
+            if (knownSheet != null) {
+                knownSheet.end(clientCode);
+                knownSheet = null;
+                return;
+            }
+            SheetBuffer complete = sheet;
+            sheet = null;
+            if (sheetWriter != null) {
+                writeLater(complete);
+                return;
+            }
+            try {
+                metrics.time("build", () -> {
+                    if (!complete.array && complete.rows.getRowCount() == 0) {
+                        System.out.println("Skipping " + complete.name + ": no 'keyValue' found.");
+                    } else if (complete.columns.size() > 0) {
+                        if (schemaRegistry != null && complete.array) {
+                            schemaRegistry.record(clientCode, complete.name, complete.columns.names());
+                        }
+                        writeSection(writer, metrics, complete);
                     }
+                });
+            } finally {
+                complete.close();
+            }
+        }
+
+        /**
+         * Hands a finished section to sheetWriter, after waiting for the oldest pending write if
+         * too many are in flight.
+         */
+        private void writeLater(SheetBuffer complete) throws IOException {
+            if (!complete.array && complete.rows.getRowCount() == 0) {
+                System.out.println("Skipping " + complete.name + ": no 'keyValue' found.");
+                complete.close();
+                return;
+            }
+            if (complete.columns.size() == 0) {
+                complete.close();
+                return;
+            }
+            if (schemaRegistry != null && complete.array) {
+                schemaRegistry.record(clientCode, complete.name, complete.columns.names());
+            }
+            pendingWrites.add(sheetWriter.submit(() -> {
+                if (aborted) {
+                    complete.close();
+                } else {
+                    metrics.time("build", () -> writeSection(writer, metrics, complete));
                 }
-                // If it's an array, we assume each element has "keyValue"
-                else if (childValue instanceof JSONArray) {
-                    JSONArray arr = (JSONArray) childValue;
-                    createSheetFromKeyValueArray(workbook, childKey, arr, headerStyle);
+                return null;
+            }));
+            if (pendingWrites.size() > maxPendingWrites) {
+                awaitWrite(pendingWrites.poll());
+            }
+        }
+
+        /**
+         * Waits until every section handed to sheetWriter is written; rethrows the first failure.
+         */
+        void awaitWrites() throws IOException {
+            while (!pendingWrites.isEmpty()) {
+                awaitWrite(pendingWrites.poll());
+            }
+        }
+
+        private static void awaitWrite(Future<?> write) throws IOException {
+            try {
+                write.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing a sheet");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
                 }
-                else {
-                    System.out.println("Skipping " + childKey + ": unrecognized type (not object/array).");
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
                 }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
             }
+        }
 
-            // Write the workbook
-            fos = new FileOutputStream(excelFile);
-            workbook.write(fos);
+        /**
+         * Releases the section left open by a failed read, and the sections still waiting to be
+         * written after a failure.
+         */
+        void close() throws IOException {
+            if (sheet != null) {
+                sheet.close();
+            }
+            if (sheetWriter != null) {
+                aborted = true;
+                for (Future<?> write : pendingWrites) {
+                    try {
+                        write.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    } catch (ExecutionException e) {
+                        // the conversion already failed
+                    }
+                }
+                sheetWriter.shutdown();
+            }
+        }
+    }
+
+    /**
+     * The attributes the schema registry knows for an array sheet of this client (empty if none).
+     */
+    private static List<String> knownAttributes(String clientCode, String sheetName) {
+        return (schemaRegistry == null) ? Collections.emptyList() : schemaRegistry.lookup(clientCode, sheetName);
+    }
+
+    /**
+     * Writes an array section whose attributes are known from the registry in a single pass.
+     */
+    private static void writeKnownSection(ShardedWorkbookWriter writer, ConversionMetrics metrics,
+                                          ColumnDictionary dictionary, String clientCode, String sheetName,
+                                          JSONArray elements, List<String> known) throws IOException {
+        KnownSchemaSheet sheet = new KnownSchemaSheet(writer, metrics, dictionary, sheetName, known);
+        for (int i = 0; i < elements.length(); i++) {
+            JSONObject element = elements.optJSONObject(i);
+            JSONArray kvArr = (element == null) ? null : element.optJSONArray("keyValue");
+            if (kvArr == null) continue;
+
+            sheet.startRow();
+            for (int j = 0; j < kvArr.length(); j++) {
+                JSONObject kv = kvArr.getJSONObject(j);
+                sheet.cell(kv.getString("attribute"), kv.optString("value", ""));
+            }
+            sheet.endRow();
+        }
+        sheet.end(clientCode);
+    }
+
+    /**
+     * Returns benefitRequest -> dataSet -> CVS, or null (with a message) if any level is missing.
+     */
+    private static JSONObject findCvs(JSONObject root, String sourceName) {
+        JSONObject benefitRequest = root.optJSONObject("benefitRequest");
+        if (benefitRequest == null) {
+            System.out.println("No 'benefitRequest' object found in " + sourceName);
+            return null;
+        }
+        JSONObject dataSet = benefitRequest.optJSONObject("dataSet");
+        if (dataSet == null) {
+            System.out.println("No 'dataSet' object found in " + sourceName);
+            return null;
+        }
+        JSONObject cvs = dataSet.optJSONObject("CVS");
+        if (cvs == null) {
+            System.out.println("No 'CVS' object found in " + sourceName);
+            return null;
+        }
+        return cvs;
+    }
+
+    /**
+     * Creates a workbook (streaming or fully in-memory).
+     */
+    static Workbook createWorkbook() {
+        if (STREAMING_OUTPUT) {
+            return XlsxOutput.newStreamingWorkbook(ROW_ACCESS_WINDOW, SHARED_STRINGS, ZIP_COMPRESSION);
+        }
+        return new XSSFWorkbook();
+    }
+
+    /**
+     * Writer for excelFile that splits sheets and workbooks at the SHEET_/WORKBOOK_ limits.
+     * Each workbook gets the tan header style.
+     */
+    static ShardedWorkbookWriter newWorkbookWriter(File excelFile, ConversionMetrics metrics) {
+        return newWorkbookWriter(excelFile, true, metrics);
+    }
+
+    /**
+     * Same as above; without splitWorkbooks everything stays in excelFile, however large.
+     */
+    static ShardedWorkbookWriter newWorkbookWriter(File excelFile, boolean splitWorkbooks, ConversionMetrics metrics) {
+        ShardedWorkbookWriter writer = new ShardedWorkbookWriter(excelFile, JsonToExcelBatch::createWorkbook,
+                JsonToExcelBatch::createHeaderStyle, COLUMN_WIDTHS, ZIP_COMPRESSION, PARALLEL_ZIP, metrics);
+        if (splitWorkbooks) {
+            writer.setLimits(SHEET_MAX_ROWS, WORKBOOK_MAX_ROWS, WORKBOOK_MAX_CHARS);
+        } else {
+            writer.setLimits(SHEET_MAX_ROWS, Long.MAX_VALUE, Long.MAX_VALUE);
+        }
+        return writer;
+    }
+
+    /**
+     * Same as above for a workbook written to out: sheets are split at SHEET_MAX_ROWS, but it all
+     * stays one workbook. Without streaming the workbook is an XSSFWorkbook whatever STREAMING_OUTPUT
+     * says: held in memory as a whole, but nothing is written to temp files (SXSSF keeps its sheet
+     * rows in them until the workbook is written).
+     */
+    static ShardedWorkbookWriter newWorkbookWriter(OutputStream out, boolean streaming) {
+        Supplier<Workbook> workbooks = streaming ? JsonToExcelBatch::createWorkbook : XSSFWorkbook::new;
+        ShardedWorkbookWriter writer = new ShardedWorkbookWriter(out, workbooks,
+                JsonToExcelBatch::createHeaderStyle, COLUMN_WIDTHS, ZIP_COMPRESSION, null);
+        writer.setLimits(SHEET_MAX_ROWS, Long.MAX_VALUE, Long.MAX_VALUE);
+        return writer;
+    }
+
+    private static void printCreated(List<File> excelFiles) {
+        for (File excelFile : excelFiles) {
             System.out.println("Created Excel: " + excelFile.getAbsolutePath());
+        }
+    }
+
+    static void closeWorkbook(Workbook workbook) {
+        // Streaming workbooks also leave temp files behind until disposed
+        if (workbook instanceof SXSSFWorkbook) {
+            ((SXSSFWorkbook) workbook).dispose();
+        }
+        if (workbook != null) {
+            try { workbook.close(); } catch (Exception e) { /* ignore */ }
+        }
+    }
 
+    /**
+     * Converts a JSONL file (one benefitRequest document per line). Lines are parsed and
+     * converted on JSONL_WORKERS while this thread keeps reading, with at most
+     * JSONL_QUEUE_CAPACITY lines in flight. Depending on JSONL_MERGE this writes one workbook per
+     * request (excelFile's name plus the transactionID) or a single workbook whose sheets hold the
+     * rows of every request, prefixed with transactionID and clientCode columns; its sheets share
+     * ROW_BUFFER_BYTES of memory before spilling.
+     */
+    static void convertJsonLinesToExcel(File jsonlFile, File excelFile) throws Exception {
+        ConversionMetrics metrics = ConversionMetrics.start(jsonlFile);
+        LinePipeline<Object> pipeline = new LinePipeline<>(JSONL_WORKERS, JSONL_QUEUE_CAPACITY);
+
+        try (BufferedReader reader = Files.newBufferedReader(jsonlFile.toPath(), StandardCharsets.UTF_8)) {
+            long failed;
+            if (JSONL_MERGE) {
+                Map<String, MergedSheet> sheets = new LinkedHashMap<>();
+                AtomicLong rowBytes = new AtomicLong(ROW_BUFFER_BYTES);
+                try {
+                    failed = pipeline.run(reader,
+                            (lineNumber, line) -> readRequestTable(line, metrics),
+                            (lineNumber, result) -> appendRequestTable((KeyValueTable) result, sheets, rowBytes));
+                    writeMergedWorkbook(sheets.values(), excelFile, metrics);
+                } finally {
+                    for (MergedSheet sheet : sheets.values()) {
+                        sheet.rows.close();
+                    }
+                }
+            } else {
+                String baseName = excelFile.getName().replaceFirst("[.][^.]+$", "");
+                long[] created = new long[1];
+                failed = pipeline.run(reader,
+                        (lineNumber, line) -> {
+                            JSONObject root = new JSONObject(line);
+                            JSONObject benefitRequest = root.optJSONObject("benefitRequest");
+                            String id = benefitRequest == null ? "" : benefitRequest.optString("transactionID", "");
+                            // The line number keeps names unique; ids that aren't safe file names are left out
+                            String suffix = KeyValueTableIO.isSafeFileName(id) ? lineNumber + "-" + id : String.valueOf(lineNumber);
+                            File requestFile = new File(excelFile.getParentFile(), baseName + "-" + suffix + ".xlsx");
+                            return writeRequestWorkbook(root, jsonlFile.getName() + ":" + lineNumber, requestFile, true, metrics);
+                        },
+                        // Lines without a CVS write nothing
+                        (lineNumber, result) -> created[0] += ((List<?>) result).size());
+                System.out.println("Created " + created[0] + " workbooks from " + jsonlFile.getName());
+            }
+            if (failed > 0) {
+                System.out.println(failed + " line(s) of " + jsonlFile.getName() + " could not be converted.");
+            }
         } catch (Exception e) {
-            e.printStackTrace();
+            metrics.fail(e);
+            throw e;
         } finally {
-            // Cleanup
-            if (workbook != null) {
-                try { workbook.close(); } catch (Exception e) { /* ignore */ }
+            metrics.finish(excelFile);
+        }
+
+        if (schemaRegistry != null) {
+            schemaRegistry.save();
+        }
+    }
+
+    /**
+     * Reads one JSONL request into a table (off the workbook, on a pipeline worker).
+     */
+    private static KeyValueTable readRequestTable(String line, ConversionMetrics metrics) throws IOException {
+        return metrics.time("parse", () -> KeyValueTableIO.readJson(new StringReader(line)));
+    }
+
+    /**
+     * Appends the rows of one request to the merged sheets, in line order (pipeline consumer).
+     * Row columns 0 and 1 hold transactionID and clientCode; the request's own attributes follow
+     * (even one that is itself called transactionID). New sheets take their memory from rowBytes.
+     */
+    private static void appendRequestTable(KeyValueTable request, Map<String, MergedSheet> sheets,
+                                           AtomicLong rowBytes) throws IOException {
+        String transactionID = request.getProperty("transactionID", "");
+        String clientCode = request.getProperty("clientCode", "");
+
+        for (KeyValueTable.Section section : request.getSections()) {
+            MergedSheet sheet = sheets.get(section.getName());
+            if (sheet == null) {
+                sheet = new MergedSheet(section.getName(), rowBytes);
+                sheets.put(section.getName(), sheet);
+            }
+
+            // Map this section's column positions onto the merged sheet
+            int[] mapping = new int[section.getColumnCount()];
+            for (int c = 0; c < mapping.length; c++) {
+                mapping[c] = MergedSheet.REQUEST_COLUMNS.size() + sheet.columns.add(section.getColumnName(c));
             }
-            if (fos != null) {
-                try { fos.close(); } catch (Exception e) { /* ignore */ }
+
+            int[] cols = new int[mapping.length + 2];
+            String[] vals = new String[mapping.length + 2];
+            for (int r = 0; r < section.getRowCount(); r++) {
+                int count = 0;
+                cols[count] = 0;
+                vals[count++] = transactionID;
+                cols[count] = 1;
+                vals[count++] = clientCode;
+                for (int c = 0; c < mapping.length; c++) {
+                    String value = section.get(r, c);
+                    if (value != null) {
+                        cols[count] = mapping[c];
+                        vals[count++] = value;
+                    }
+                }
+                sheet.rows.append(cols, vals, count);
             }
         }
     }
 
     /**
-     * Create a sheet from a single object with "keyValue": [ {attribute:..., value:...}, ... ]
-     * We'll make exactly one data row.
+     * Writes the merged sheets, in the order their names first appeared in the file.
      */
-    private static void createSheetFromKeyValueObject(Workbook workbook, String sheetName,
-                                                      JSONObject object, CellStyle headerStyle) {
-        JSONArray keyValue = object.optJSONArray("keyValue");
-        if (keyValue == null) return;
+    private static void writeMergedWorkbook(Collection<MergedSheet> sheets, File excelFile,
+                                            ConversionMetrics metrics) throws IOException {
+        try (ShardedWorkbookWriter writer = newWorkbookWriter(excelFile, metrics)) {
+            metrics.time("build", () -> {
+                for (MergedSheet merged : sheets) {
+                    List<String> header = new ArrayList<>(MergedSheet.REQUEST_COLUMNS);
+                    header.addAll(merged.columns.names());
+                    writer.startSheet(merged.name, header);
 
-        // Collect attributes
-        List<String> attributes = new ArrayList<>();
-        for (int i = 0; i < keyValue.length(); i++) {
-            JSONObject kv = keyValue.getJSONObject(i);
-            attributes.add(kv.getString("attribute"));
+                    String[] values = new String[header.size()];
+                    try (RowBuffer.Cursor cursor = merged.rows.openCursor()) {
+                        while (cursor.next()) {
+                            Arrays.fill(values, null);
+                            for (int i = 0; i < cursor.size(); i++) {
+                                values[cursor.column(i)] = cursor.value(i);
+                            }
+                            writer.addRow(values);
+                            metrics.addRows(1);
+                            metrics.addCells(cursor.size());
+                        }
+                    }
+                    writer.endSheet();
+                }
+            });
+
+            printCreated(writer.finish());
+        }
+    }
+
+    /**
+     * Builds the sections of the CVS keys on the fork/join pool, up to SHEET_WINDOW ahead, and
+     * writes the sheets one by one in key order (the workbook itself is not thread-safe).
+     */
+    private static void createSheetsInParallel(ShardedWorkbookWriter writer, ColumnDictionary dictionary,
+                                               ConversionMetrics metrics, String clientCode, JSONObject cvs)
+            throws IOException {
+        long bufferBytes = ROW_BUFFER_BYTES / SHEET_WINDOW;
+        Deque<ForkJoinTask<SheetBuffer>> inFlight = new ArrayDeque<>();
+        try {
+            for (String childKey : cvs.keySet()) {
+                Object childValue = cvs.get(childKey);
+                inFlight.add(ForkJoinPool.commonPool().submit(
+                        () -> buildSection(dictionary, clientCode, childKey, childValue, bufferBytes)));
+                if (inFlight.size() >= SHEET_WINDOW) {
+                    writeBuiltSection(writer, metrics, inFlight.poll());
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                writeBuiltSection(writer, metrics, inFlight.poll());
+            }
+        } finally {
+            // Sections not written because of an error still hold their buffers
+            for (ForkJoinTask<SheetBuffer> task : inFlight) {
+                try {
+                    SheetBuffer sheet = task.join();
+                    if (sheet != null) {
+                        sheet.close();
+                    }
+                } catch (RuntimeException e) {
+                    // already failed
+                }
+            }
         }
+    }
 
-        Sheet sheet = workbook.createSheet(sheetName);
+    private static void writeBuiltSection(ShardedWorkbookWriter writer, ConversionMetrics metrics,
+                                          ForkJoinTask<SheetBuffer> task) throws IOException {
+        SheetBuffer sheet = task.join();
+        if (sheet != null) {
+            writeSection(writer, metrics, sheet);
+        }
+    }
 
-        // HEADER ROW
-        Row headerRow = sheet.createRow(0);
-        for (int c = 0; c < attributes.size(); c++) {
-            Cell cell = headerRow.createCell(c);
-            cell.setCellValue(attributes.get(c));
-            cell.setCellStyle(headerStyle);
+    /**
+     * Collects the header and the cell values of one CVS child into a SheetBuffer without touching
+     * the workbook (in one pass: each keyValue list is buffered as its attributes are added to the
+     * header), holding up to bufferBytes of rows in memory. Returns null if the child has nothing
+     * to write.
+     */
+    private static SheetBuffer buildSection(ColumnDictionary dictionary, String clientCode, String sheetName,
+                                            Object childValue, long bufferBytes) throws IOException {
+        if (!(childValue instanceof JSONObject) && !(childValue instanceof JSONArray)) {
+            System.out.println("Skipping " + sheetName + ": unrecognized type (not object/array).");
+            return null;
+        }
+        if (childValue instanceof JSONObject && ((JSONObject) childValue).optJSONArray("keyValue") == null) {
+            System.out.println("Skipping " + sheetName + ": no 'keyValue' found.");
+            return null;
         }
 
-        // DATA ROW
-        Row dataRow = sheet.createRow(1);
-        for (int i = 0; i < keyValue.length(); i++) {
-            JSONObject kv = keyValue.getJSONObject(i);
-            String attr  = kv.getString("attribute");
-            String value = kv.optString("value", "");
-            int colIndex = attributes.indexOf(attr);
-            if (colIndex >= 0) {
-                Cell cell = dataRow.createCell(colIndex);
-                cell.setCellValue(value);
+        // Array sheets keep the column order known from earlier runs
+        boolean array = childValue instanceof JSONArray;
+        SheetBuffer sheet = new SheetBuffer(sheetName, array, dictionary.newColumns(), bufferBytes);
+        try {
+            if (schemaRegistry != null && array) {
+                schemaRegistry.lookup(clientCode, sheetName).forEach(sheet.columns::add);
+            }
+
+            if (array) {
+                JSONArray elements = (JSONArray) childValue;
+                for (int i = 0; i < elements.length(); i++) {
+                    JSONObject element = elements.optJSONObject(i);
+                    JSONArray kvArr = (element == null) ? null : element.optJSONArray("keyValue");
+                    if (kvArr != null) {
+                        sheet.addRow(kvArr);
+                    }
+                }
+            } else {
+                sheet.addRow(((JSONObject) childValue).getJSONArray("keyValue"));
             }
-        }
 
-        // Auto-size
-        for (int c = 0; c < attributes.size(); c++) {
-            sheet.autoSizeColumn(c);
+            if (sheet.columns.size() == 0) {
+                sheet.close();
+                return null;
+            }
+            if (schemaRegistry != null && array) {
+                schemaRegistry.record(clientCode, sheetName, sheet.columns.names());
+            }
+            return sheet;
+        } catch (IOException | RuntimeException e) {
+            sheet.close();
+            throw e;
         }
     }
 
     /**
-     * Create a sheet from an array of objects, each having a "keyValue" array.
-     * Each element -> one row in the sheet.
+     * Writes a buffered section as a new sheet (continued on further sheets past the row limits),
+     * all columns being known by now, and releases its buffer.
      */
-    private static void createSheetFromKeyValueArray(Workbook workbook, String sheetName,
-                                                     JSONArray array, CellStyle headerStyle) {
-        // Step 1: Collect all possible attributes across all array elements
-        Set<String> allAttributes = new LinkedHashSet<>();
-        List<JSONArray> rowsData = new ArrayList<>();
-
-        for (int i = 0; i < array.length(); i++) {
-            JSONObject element = array.optJSONObject(i);
-            if (element == null) continue;
-            JSONArray kvArr = element.optJSONArray("keyValue");
-            if (kvArr != null) {
-                rowsData.add(kvArr);
-                for (int j = 0; j < kvArr.length(); j++) {
-                    JSONObject kv = kvArr.getJSONObject(j);
-                    allAttributes.add(kv.getString("attribute"));
+    private static void writeSection(ShardedWorkbookWriter writer, ConversionMetrics metrics,
+                                     SheetBuffer sheet) throws IOException {
+        try {
+            writer.startSheet(sheet.name, sheet.columns.names());
+            String[] values = new String[sheet.columns.size()];
+            try (RowBuffer.Cursor cursor = sheet.rows.openCursor()) {
+                while (cursor.next()) {
+                    Arrays.fill(values, null);
+                    for (int i = 0; i < cursor.size(); i++) {
+                        values[cursor.column(i)] = cursor.value(i);
+                    }
+                    writer.addRow(values);
+                    metrics.addRows(1);
+                    metrics.addCells(cursor.size());
                 }
             }
+            writer.endSheet();
+        } finally {
+            sheet.close();
+        }
+    }
+
+    /**
+     * One CVS section on its way to a sheet: its columns, in the order attributes first appeared,
+     * and its rows in a RowBuffer until the header is complete.
+     */
+    private static class SheetBuffer {
+        final String name;
+        final boolean array;
+        final ColumnDictionary.Columns columns;
+        final RowBuffer rows;
+
+        private int[] rowColumns = new int[16];
+        private String[] rowValues = new String[16];
+        private int rowSize;
+
+        SheetBuffer(String name, boolean array, ColumnDictionary.Columns columns, long bufferBytes) {
+            this.name = name;
+            this.array = array;
+            this.columns = columns;
+            this.rows = new RowBuffer(bufferBytes);
+        }
+
+        void startRow() {
+            rowSize = 0;
+        }
+
+        /**
+         * Adds a cell to the current row. A repeated attribute is kept twice; the later value
+         * wins when the row is written.
+         */
+        void cell(String attribute, String value) {
+            int column = columns.add(attribute);
+            if (rowSize == rowColumns.length) {
+                rowColumns = Arrays.copyOf(rowColumns, rowSize * 2);
+                rowValues = Arrays.copyOf(rowValues, rowSize * 2);
+            }
+            rowColumns[rowSize] = column;
+            rowValues[rowSize] = value;
+            rowSize++;
         }
 
-        if (allAttributes.isEmpty()) {
-            // No data, skip creating sheet
-            return;
+        void endRow() throws IOException {
+            rows.append(rowColumns, rowValues, rowSize);
         }
 
-        Sheet sheet = workbook.createSheet(sheetName);
+        /**
+         * Adds one "keyValue" list as a row.
+         */
+        void addRow(JSONArray keyValue) throws IOException {
+            startRow();
+            for (int j = 0; j < keyValue.length(); j++) {
+                JSONObject kv = keyValue.getJSONObject(j);
+                cell(kv.getString("attribute"), kv.optString("value", ""));
+            }
+            endRow();
+        }
 
-        // Step 2: Header row
-        List<String> attributeList = new ArrayList<>(allAttributes);
-        Row headerRow = sheet.createRow(0);
-        for (int c = 0; c < attributeList.size(); c++) {
-            Cell cell = headerRow.createCell(c);
-            cell.setCellValue(attributeList.get(c));
-            cell.setCellStyle(headerStyle);
+        void close() throws IOException {
+            rows.close();
         }
+    }
 
-        // Step 3: One row per element
-        int rowIndex = 1;
-        for (JSONArray kvArr : rowsData) {
-            Row row = sheet.createRow(rowIndex++);
-            for (int j = 0; j < kvArr.length(); j++) {
-                JSONObject kv = kvArr.getJSONObject(j);
-                String attr  = kv.getString("attribute");
-                String value = kv.optString("value", "");
-                int colIndex = attributeList.indexOf(attr);
-                if (colIndex >= 0) {
-                    row.createCell(colIndex).setCellValue(value);
+    /**
+     * An array section written straight to its sheet, with the header the registry knows. An
+     * unknown attribute is appended to the header if the writer still can (see addColumn), and
+     * otherwise ends the attempt with UnknownAttributeException.
+     */
+    private static class KnownSchemaSheet {
+        private final ShardedWorkbookWriter writer;
+        private final ConversionMetrics metrics;
+        private final String name;
+        private final ColumnDictionary.Columns columns;
+        private String[] values;
+        private int cells;
+
+        KnownSchemaSheet(ShardedWorkbookWriter writer, ConversionMetrics metrics, ColumnDictionary dictionary,
+                         String name, List<String> known) throws IOException {
+            this.writer = writer;
+            this.metrics = metrics;
+            this.name = name;
+            this.columns = dictionary.newColumns();
+            known.forEach(columns::add);
+            this.values = new String[columns.size()];
+            writer.startSheet(name, columns.names());
+        }
+
+        void startRow() {
+            Arrays.fill(values, null);
+            cells = 0;
+        }
+
+        /**
+         * A repeated attribute keeps its later value, as in SheetBuffer.
+         */
+        void cell(String attribute, String value) {
+            int column = columns.columnOf(attribute);
+            if (column < 0) {
+                if (!writer.addColumn(attribute)) {
+                    throw new UnknownAttributeException(name, attribute);
                 }
+                column = columns.add(attribute);
+                values = Arrays.copyOf(values, columns.size());
             }
+            values[column] = value;
+            cells++;
+        }
+
+        void endRow() throws IOException {
+            writer.addRow(values);
+            metrics.addRows(1);
+            metrics.addCells(cells);
+        }
+
+        void end(String clientCode) {
+            writer.endSheet();
+            schemaRegistry.record(clientCode, name, columns.names());
+        }
+    }
+
+    /**
+     * A single-pass sheet met an attribute too late to add it to the header.
+     */
+    private static class UnknownAttributeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UnknownAttributeException(String sheetName, String attribute) {
+            super("Attribute '" + attribute + "' is not in the known schema of " + sheetName);
         }
+    }
+
+    /**
+     * A sheet shared by all requests of a JSONL file. Rows are buffered (spilling to a temp file
+     * once the sheets together hold too much) until the last request has added its columns. columns only holds the requests'
+     * attributes; the REQUEST_COLUMNS come first in every row.
+     */
+    private static class MergedSheet {
+        static final List<String> REQUEST_COLUMNS = Arrays.asList("transactionID", "clientCode");
+
+        final String name;
+        final ColumnDictionary.Columns columns = new ColumnDictionary().newColumns();
+        final RowBuffer rows;
 
-        // Auto-size
-        for (int c = 0; c < attributeList.size(); c++) {
-            sheet.autoSizeColumn(c);
+        MergedSheet(String name, AtomicLong rowBytes) {
+            this.name = name;
+            this.rows = new RowBuffer(rowBytes);
         }
     }
 
     /**
      * Creates a tan-colored header style with thin borders.
      */
-    private static CellStyle createHeaderStyle(Workbook workbook) {
+    static CellStyle createHeaderStyle(Workbook workbook) {
         CellStyle style = workbook.createCellStyle();
 
         // Fill color: TAN
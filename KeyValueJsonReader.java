@@ -0,0 +1,236 @@
+package com.example;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pull-style reader for request files that never builds the whole JSON tree.
+ * It understands both layouts used in this project:
+ *
+ *   { "benefitRequest": { "clientCode": ..., "dataSet": { "CVS": { "name": {...} | [...], ... } } } }
+ *   { "keyValue": [ { "keyValue": [ {attribute, value}, ... ] }, ... ] }      (requestJSONtoCSV)
+ *
+ * and reports what it finds to a Handler: top-level scalars (transactionID, clientCode, ...),
+ * then for every CVS child (or the top-level "keyValue" array) a section with one row per
+ * element and one cell per attribute/value pair. Only the token being read is in memory.
+ *
+ * Values are converted like JSONObject.optString(key, ""): null becomes "", numbers their text.
+ */
+public class KeyValueJsonReader {
+
+    /**
+     * Receives the content of a request in document order.
+     */
+    public interface Handler {
+        /** A top-level scalar of the request, e.g. transactionID or clientCode. */
+        default void property(String name, String value) throws IOException {
+        }
+
+        /** A CVS child (or the top-level "keyValue" array) starts; array is false for a single object. */
+        void startSection(String name, boolean array) throws IOException;
+
+        void startRow() throws IOException;
+
+        void cell(String attribute, String value) throws IOException;
+
+        void endRow() throws IOException;
+
+        void endSection() throws IOException;
+    }
+
+    private final JSONTokener tokener;
+    private final Handler handler;
+
+    private KeyValueJsonReader(Reader reader, Handler handler) {
+        this.tokener = new JSONTokener(reader);
+        this.handler = handler;
+    }
+
+    /**
+     * Reads the whole document from the reader and reports it to the handler.
+     */
+    public static void read(Reader reader, Handler handler) throws IOException {
+        try {
+            new KeyValueJsonReader(reader, handler).readRoot();
+        } catch (JSONException e) {
+            throw new IOException("Malformed request JSON: " + e.getMessage(), e);
+        }
+    }
+
+    private void readRoot() throws IOException {
+        expect('{');
+        if (endOfScope('}')) return;
+        do {
+            String key = readKey();
+            if (key.equals("benefitRequest") && peek() == '{') {
+                readBenefitRequest();
+            } else if (key.equals("keyValue") && peek() == '[') {
+                readSection(key);
+            } else {
+                readProperty(key);
+            }
+        } while (nextMember('}'));
+    }
+
+    private void readBenefitRequest() throws IOException {
+        expect('{');
+        if (endOfScope('}')) return;
+        do {
+            String key = readKey();
+            if (key.equals("dataSet") && peek() == '{') {
+                readDataSet();
+            } else {
+                readProperty(key);
+            }
+        } while (nextMember('}'));
+    }
+
+    private void readDataSet() throws IOException {
+        expect('{');
+        if (endOfScope('}')) return;
+        do {
+            String key = readKey();
+            if (key.equals("CVS") && peek() == '{') {
+                expect('{');
+                if (endOfScope('}')) continue;
+                do {
+                    readSection(readKey());
+                } while (nextMember('}'));
+            } else {
+                tokener.nextValue();
+            }
+        } while (nextMember('}'));
+    }
+
+    /**
+     * A section is either a single { "keyValue": [...] } object or an array of them;
+     * anything else is skipped, like the DOM-based converters do.
+     */
+    private void readSection(String name) throws IOException {
+        char next = peek();
+        if (next == '{') {
+            handler.startSection(name, false);
+            readElement();
+            handler.endSection();
+        } else if (next == '[') {
+            handler.startSection(name, true);
+            expect('[');
+            if (!endOfScope(']')) {
+                do {
+                    if (peek() == '{') {
+                        readElement();
+                    } else {
+                        tokener.nextValue();
+                    }
+                } while (nextMember(']'));
+            }
+            handler.endSection();
+        } else {
+            tokener.nextValue();
+        }
+    }
+
+    /**
+     * One { "keyValue": [ {attribute, value}, ... ] } element -> one row.
+     * Elements without a keyValue array produce no row.
+     */
+    private void readElement() throws IOException {
+        expect('{');
+        if (endOfScope('}')) return;
+        do {
+            String key = readKey();
+            if (key.equals("keyValue") && peek() == '[') {
+                handler.startRow();
+                expect('[');
+                if (!endOfScope(']')) {
+                    do {
+                        readAttributeValue();
+                    } while (nextMember(']'));
+                }
+                handler.endRow();
+            } else {
+                tokener.nextValue();
+            }
+        } while (nextMember('}'));
+    }
+
+    private void readAttributeValue() throws IOException {
+        if (peek() != '{') {
+            tokener.nextValue();
+            return;
+        }
+        String attribute = null;
+        String value = "";
+
+        expect('{');
+        if (!endOfScope('}')) {
+            do {
+                String key = readKey();
+                Object raw = tokener.nextValue();
+                if (key.equals("attribute")) {
+                    attribute = JSONObject.NULL.equals(raw) ? null : raw.toString();
+                } else if (key.equals("value")) {
+                    value = JSONObject.NULL.equals(raw) ? "" : raw.toString();
+                }
+            } while (nextMember('}'));
+        }
+        if (attribute != null) {
+            handler.cell(attribute, value);
+        }
+    }
+
+    private void readProperty(String key) throws IOException {
+        Object raw = tokener.nextValue();
+        if (!(raw instanceof JSONObject) && !(raw instanceof org.json.JSONArray)) {
+            handler.property(key, JSONObject.NULL.equals(raw) ? null : raw.toString());
+        }
+    }
+
+    private String readKey() {
+        char quote = tokener.nextClean();
+        if (quote != '"' && quote != '\'') {
+            throw tokener.syntaxError("Expected a quoted key");
+        }
+        String key = tokener.nextString(quote);
+        expect(':');
+        return key;
+    }
+
+    private char peek() {
+        char c = tokener.nextClean();
+        tokener.back();
+        return c;
+    }
+
+    private void expect(char expected) {
+        char c = tokener.nextClean();
+        if (c != expected) {
+            throw tokener.syntaxError("Expected '" + expected + "'");
+        }
+    }
+
+    /**
+     * True (and consumed) if the scope closes right away, i.e. it is empty.
+     */
+    private boolean endOfScope(char closing) {
+        if (tokener.nextClean() == closing) {
+            return true;
+        }
+        tokener.back();
+        return false;
+    }
+
+    /**
+     * After a member: true if another one follows, false if the scope is closed.
+     */
+    private boolean nextMember(char closing) {
+        char c = tokener.nextClean();
+        if (c == ',') return true;
+        if (c == closing) return false;
+        throw tokener.syntaxError("Expected ',' or '" + closing + "'");
+    }
+}
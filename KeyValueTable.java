@@ -0,0 +1,198 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Format-neutral form of a request, shared by all converters: the request's top-level properties
+ * (transactionID, clientCode, ...) plus one {@link Section} per CVS child, sheet or CSV file.
+ *
+ * Attribute names are dictionary-encoded through a {@link ColumnDictionary} shared by all
+ * sections, and values are stored column by column in plain String arrays, so a table costs a
+ * few references per cell instead of a JSONObject per attribute/value pair. Short values go through
+ * a {@link ValueInterner}, so a value repeated in many cells is held once.
+ * Readers and writers for JSON, XLSX and CSV live in {@link KeyValueTableIO}.
+ */
+public class KeyValueTable {
+
+    private final ColumnDictionary dictionary;
+    private final ValueInterner interner = new ValueInterner();
+    private final Map<String, String> properties = new LinkedHashMap<>();
+    private final List<Section> sections = new ArrayList<>();
+
+    public KeyValueTable() {
+        this(new ColumnDictionary());
+    }
+
+    public KeyValueTable(ColumnDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public ColumnDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Sets a top-level property; null is kept and written back as JSON null.
+     */
+    public void setProperty(String name, String value) {
+        properties.put(name, value);
+    }
+
+    public String getProperty(String name, String defaultValue) {
+        String value = properties.get(name);
+        return (value == null) ? defaultValue : value;
+    }
+
+    public Map<String, String> getProperties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * Appends a new section. array is false for a single { "keyValue":[...] } object.
+     */
+    public Section addSection(String name, boolean array) {
+        Section section = newSection(name, array);
+        sections.add(section);
+        return section;
+    }
+
+    /**
+     * Creates a section on this table's dictionary without adding it, so sections can be built
+     * concurrently and kept (or written) in their original order afterwards.
+     */
+    public Section newSection(String name, boolean array) {
+        return new Section(name, array, dictionary.newColumns(), interner);
+    }
+
+    public void addSection(Section section) {
+        sections.add(section);
+    }
+
+    public List<Section> getSections() {
+        return Collections.unmodifiableList(sections);
+    }
+
+    /**
+     * One sheet's worth of rows. Columns appear in the order they were first added.
+     * Not thread-safe, but separate sections of a table can be filled concurrently.
+     */
+    public static class Section {
+        private static final String[] NO_VALUES = new String[0];
+
+        private final String name;
+        private boolean array;
+        private final ColumnDictionary.Columns columns;
+        private final ValueInterner interner;
+
+        // values[column][row]; null means the row has no such attribute
+        private String[][] values = new String[0][];
+        private int rowCount;
+        private long cellCount;
+
+        Section(String name, boolean array, ColumnDictionary.Columns columns, ValueInterner interner) {
+            this.name = name;
+            this.array = array;
+            this.columns = columns;
+            this.interner = interner;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isArray() {
+            return array;
+        }
+
+        /**
+         * For readers that only know the shape once all rows are in (e.g. a sheet with one data row).
+         */
+        public void setArray(boolean array) {
+            this.array = array;
+        }
+
+        /**
+         * Adds the attribute as the next column if it is new; returns its column index either way.
+         */
+        public int addColumn(String attribute) {
+            int column = columns.add(attribute);
+            if (column >= values.length) {
+                int oldLength = values.length;
+                values = Arrays.copyOf(values, Math.max(column + 1, oldLength * 2));
+                Arrays.fill(values, oldLength, values.length, NO_VALUES);
+            }
+            return column;
+        }
+
+        /**
+         * Returns the column index of the attribute, or -1 if this section doesn't have it.
+         */
+        public int columnOf(String attribute) {
+            return columns.columnOf(attribute);
+        }
+
+        /**
+         * Starts a new, empty row and returns its index.
+         */
+        public int addRow() {
+            return rowCount++;
+        }
+
+        /**
+         * Sets a value in the last row, adding the attribute as a column if needed.
+         */
+        public void put(String attribute, String value) {
+            set(rowCount - 1, addColumn(attribute), value);
+        }
+
+        public void set(int row, int column, String value) {
+            String[] columnValues = values[column];
+            if (row >= columnValues.length) {
+                columnValues = Arrays.copyOf(columnValues, Math.max(row + 1, Math.max(16, columnValues.length * 2)));
+                values[column] = columnValues;
+            }
+            if (columnValues[row] == null) {
+                if (value != null) cellCount++;
+            } else if (value == null) {
+                cellCount--;
+            }
+            columnValues[row] = interner.intern(value);
+        }
+
+        /**
+         * Returns the value at (row, column), or null if the row has no such attribute.
+         */
+        public String get(int row, int column) {
+            String[] columnValues = values[column];
+            return (row < columnValues.length) ? columnValues[row] : null;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public int getColumnCount() {
+            return columns.size();
+        }
+
+        public String getColumnName(int column) {
+            return columns.nameAt(column);
+        }
+
+        public List<String> getColumnNames() {
+            return columns.names();
+        }
+
+        /**
+         * Number of non-null values in the section.
+         */
+        public long getCellCount() {
+            return cellCount;
+        }
+    }
+}
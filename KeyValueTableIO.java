@@ -0,0 +1,509 @@
+package com.example;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Readers and writers between {@link KeyValueTable} and the three file formats of this project:
+ *
+ *   JSON  the benefitRequest envelope (one section per CVS child), or the top-level
+ *         { "keyValue":[...] } layout used by the CSV converters (a single "keyValue" section)
+ *   XLSX  one sheet per section, header row of attribute names, one row per element
+ *   CSV   a single section, header row of attribute names
+ *
+ * Readers stream their input (JSON token by token, straight from the file's bytes; XLSX through the
+ * SAX event model) into the table, and writers stream the table out, so any-to-any conversion
+ * costs one table in memory and no intermediate JSONObjects:
+ *
+ *   java com.example.KeyValueTableIO input.xlsx output.csv
+ */
+public class KeyValueTableIO {
+
+    private static final int JSON_INDENT = 4;
+    private static final String KEY_VALUE_SECTION = "keyValue";
+    // Names from the input that may be used in a file name as they are
+    private static final Pattern SAFE_FILE_NAME = Pattern.compile("[A-Za-z0-9_.-]{1,64}");
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: KeyValueTableIO <input.json|.xlsx|.csv> <output.json|.xlsx|.csv>");
+            return;
+        }
+        try {
+            File input = new File(args[0]);
+            File output = new File(args[1]);
+            write(read(input), output);
+            System.out.println("Converted " + input.getName() + " to " + output.getAbsolutePath());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads a .json, .xlsx or .csv file, depending on its extension.
+     */
+    public static KeyValueTable read(File file) throws IOException {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".xlsx")) {
+            return readXlsx(file);
+        }
+        if (name.endsWith(".json")) {
+            return readJson(file);
+        }
+        if (name.endsWith(".csv")) {
+            try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                return readCsv(reader, KEY_VALUE_SECTION);
+            }
+        }
+        throw new IOException("Unsupported input format: " + file.getName());
+    }
+
+    /**
+     * Writes a .json, .xlsx or .csv file, depending on its extension. A table with several
+     * sections written as CSV becomes one file per section, named as {@link SectionFiles} does.
+     */
+    public static void write(KeyValueTable table, File file) throws IOException {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".xlsx")) {
+            writeXlsx(table, file);
+        } else if (name.endsWith(".json")) {
+            try (Writer writer = newWriter(file)) {
+                List<KeyValueTable.Section> sections = table.getSections();
+                if (sections.size() == 1 && sections.get(0).getName().equals(KEY_VALUE_SECTION)) {
+                    writeKeyValueJson(sections.get(0), writer);
+                } else {
+                    writeRequestJson(table, writer);
+                }
+            }
+        } else if (name.endsWith(".csv")) {
+            List<KeyValueTable.Section> sections = table.getSections();
+            if (sections.size() == 1) {
+                try (Writer writer = newWriter(file)) {
+                    writeCsv(sections.get(0), writer);
+                }
+            } else {
+                SectionFiles files = new SectionFiles(file.getParentFile(), file.getName().replaceFirst("[.][^.]+$", ""), ".csv");
+                for (int i = 0; i < sections.size(); i++) {
+                    KeyValueTable.Section section = sections.get(i);
+                    try (Writer writer = newWriter(files.next(section.getName(), i + 1))) {
+                        writeCsv(section, writer);
+                    }
+                }
+            }
+        } else {
+            throw new IOException("Unsupported output format: " + file.getName());
+        }
+    }
+
+    /**
+     * Whether a name taken from the input (a section name, a transactionID) may be used in a file
+     * name as it is: 1 to 64 letters, digits, '_', '.' or '-'. Anything else could leave the output
+     * folder ("../x") or not be a valid file name everywhere.
+     */
+    public static boolean isSafeFileName(String name) {
+        return SAFE_FILE_NAME.matcher(name).matches();
+    }
+
+    /**
+     * Names the files of a table's sections <base>-<section><extension>. A section name that isn't a
+     * safe file name is replaced by the section's position, section<n> (from 1), and a "-<k>" is
+     * added to a name that was already handed out. Names are compared ignoring case, as file names
+     * are on Windows.
+     */
+    public static class SectionFiles {
+        private final File dir;
+        private final String base;
+        private final String extension;
+        private final Set<String> usedNames = new HashSet<>();
+
+        public SectionFiles(File dir, String base, String extension) {
+            this.dir = dir;
+            this.base = base;
+            this.extension = extension;
+        }
+
+        public File next(String sectionName, int index) {
+            String name = isSafeFileName(sectionName) ? sectionName : "section" + index;
+            for (int k = 2; !usedNames.add(name.toLowerCase(Locale.ROOT)); k++) {
+                name = "section" + index + "-" + k;
+            }
+            return new File(dir, base + "-" + name + extension);
+        }
+    }
+
+    // ---------------------------------------------------------------- JSON
+
+    /**
+     * Reads either JSON layout. Top-level scalars become properties.
+     */
+    public static KeyValueTable readJson(Reader reader) throws IOException {
+        KeyValueTable table = new KeyValueTable();
+        KeyValueJsonReader.read(reader, new TableJsonHandler(table));
+        return table;
+    }
+
+    /**
+     * Same as readJson(Reader), but tokenizes the file's UTF-8 bytes directly (see MappedJsonReader).
+     */
+    public static KeyValueTable readJson(File file) throws IOException {
+        KeyValueTable table = new KeyValueTable();
+        MappedJsonReader.read(file, new TableJsonHandler(table));
+        return table;
+    }
+
+    /**
+     * Writes the benefitRequest envelope. transactionID and clientCode fall back to "PLACEHOLDER"
+     * and data to null, like the XLSX->JSON converter; other properties follow in table order.
+     */
+    public static void writeRequestJson(KeyValueTable table, Writer out) throws IOException {
+        JsonStreamWriter json = new JsonStreamWriter(out, JSON_INDENT);
+        json.beginObject().name("benefitRequest").beginObject();
+        json.name("transactionID").value(table.getProperty("transactionID", "PLACEHOLDER"));
+        json.name("clientCode").value(table.getProperty("clientCode", "PLACEHOLDER"));
+        String data = table.getProperty("data", "");
+        json.name("data");
+        if (data.isEmpty()) {
+            json.nullValue();
+        } else {
+            json.value(data);
+        }
+        for (Map.Entry<String, String> property : table.getProperties().entrySet()) {
+            String name = property.getKey();
+            if (!name.equals("transactionID") && !name.equals("clientCode") && !name.equals("data")) {
+                json.name(name).value(property.getValue());
+            }
+        }
+
+        json.name("dataSet").beginObject().name("CVS").beginObject();
+        for (KeyValueTable.Section section : table.getSections()) {
+            json.name(section.getName());
+            writeSectionJson(json, section);
+        }
+        json.endObject().endObject().endObject().endObject();
+        json.flush();
+    }
+
+    /**
+     * Writes one section in the { "keyValue":[ { "keyValue":[...] }, ... ] } layout.
+     */
+    public static void writeKeyValueJson(KeyValueTable.Section section, Writer out) throws IOException {
+        JsonStreamWriter json = new JsonStreamWriter(out, JSON_INDENT);
+        json.beginObject().name(KEY_VALUE_SECTION).beginArray();
+        for (int row = 0; row < section.getRowCount(); row++) {
+            writeElement(json, section, row);
+        }
+        json.endArray().endObject();
+        json.flush();
+    }
+
+    private static void writeSectionJson(JsonStreamWriter json, KeyValueTable.Section section) throws IOException {
+        if (!section.isArray()) {
+            writeElement(json, section, 0);
+            return;
+        }
+        json.beginArray();
+        for (int row = 0; row < section.getRowCount(); row++) {
+            writeElement(json, section, row);
+        }
+        json.endArray();
+    }
+
+    private static void writeElement(JsonStreamWriter json, KeyValueTable.Section section, int row) throws IOException {
+        json.beginObject().name("keyValue").beginArray();
+        if (row < section.getRowCount()) {
+            for (int c = 0; c < section.getColumnCount(); c++) {
+                String value = section.get(row, c);
+                if (value == null) continue;
+
+                json.beginObject();
+                json.name("attribute").value(section.getColumnName(c));
+                json.name("value").value(value);
+                json.endObject();
+            }
+        }
+        json.endArray().endObject();
+    }
+
+    // ---------------------------------------------------------------- XLSX
+
+    /**
+     * Reads every sheet with the SAX event model. The first row of a sheet is the header; sheets
+     * without data rows are skipped, and a sheet with exactly one data row becomes a single
+     * object (array = false), same as ExcelToJsonBatch. Shards written by ShardedWorkbookWriter
+     * (file.part2.xlsx, ... and "name#2" sheets) are joined back into their sections.
+     */
+    public static KeyValueTable readXlsx(File file) throws IOException {
+        KeyValueTable table = new KeyValueTable();
+        SheetSectionHandler.readXlsx(file, Projection.ALL, new TableJsonHandler(table));
+        return table;
+    }
+
+    /**
+     * Same as readXlsx, for a workbook that is already in memory. Values are formatted the way the
+     * SAX readers format them (see cellText), so both give the same JSON.
+     */
+    public static KeyValueTable readWorkbook(Workbook workbook) {
+        KeyValueTable table = new KeyValueTable();
+        readWorkbook(workbook, table, new ShardedWorkbookWriter.Continuations());
+        return table;
+    }
+
+    /**
+     * Adds the sheets of one workbook to table, joining shard sheets to the sections they continue.
+     * Call it for each part of a split workbook in order, with the same continuations.
+     */
+    public static void readWorkbook(Workbook workbook, KeyValueTable table,
+                                    ShardedWorkbookWriter.Continuations continuations) {
+        readWorkbook(workbook, table, continuations, Projection.ALL);
+    }
+
+    /**
+     * Same as above, keeping only the sheets and columns selected by projection.
+     */
+    public static void readWorkbook(Workbook workbook, KeyValueTable table,
+                                    ShardedWorkbookWriter.Continuations continuations, Projection projection) {
+        continuations.startWorkbook(workbook);
+        DataFormatter formatter = new DataFormatter();
+        formatter.setUseCachedValuesForFormulaCells(true);
+        for (Sheet sheet : workbook) {
+            boolean continued = continuations.next(sheet.getSheetName());
+            if (!projection.includesSheet(continuations.getSectionName())) continue;
+            Iterator<Row> rowIterator = sheet.iterator();
+            if (!rowIterator.hasNext()) continue;
+
+            // header row; empty header cells (and attributes not selected) drop their column
+            Row headerRow = rowIterator.next();
+            KeyValueTable.Section section = sectionFor(table, sheet.getSheetName(), continued, continuations);
+            int cellCount = headerRow.getPhysicalNumberOfCells();
+            int[] columns = new int[cellCount];
+            for (int c = 0; c < cellCount; c++) {
+                Cell cell = headerRow.getCell(c);
+                String attribute = cellText(cell, formatter);
+                columns[c] = (attribute.isEmpty() || !projection.includesAttribute(attribute))
+                        ? -1 : section.addColumn(attribute);
+            }
+
+            while (rowIterator.hasNext()) {
+                Row dataRow = rowIterator.next();
+                int row = section.addRow();
+                for (int c = 0; c < cellCount; c++) {
+                    if (columns[c] < 0) continue;
+                    section.set(row, columns[c], cellText(dataRow.getCell(c), formatter));
+                }
+            }
+
+            addIfNew(table, section);
+        }
+    }
+
+    /**
+     * A cell's text as XSSFSheetXMLHandler reports it with a DataFormatter: the value as its number
+     * format shows it, a formula's cached result, and errors as "ERROR:#DIV/0!" and the like.
+     */
+    private static String cellText(Cell cell, DataFormatter formatter) {
+        if (cell == null) {
+            return "";
+        }
+        CellType type = (cell.getCellType() == CellType.FORMULA) ? cell.getCachedFormulaResultType() : cell.getCellType();
+        if (type == CellType.ERROR) {
+            return "ERROR:" + FormulaError.forInt(cell.getErrorCellValue()).getString();
+        }
+        return formatter.formatCellValue(cell);
+    }
+
+    /**
+     * The section a sheet's rows go to: the previous sheet's section if this sheet is its next
+     * shard ("Copay#2" after "Copay", as continuations.next() found), otherwise a new one.
+     */
+    private static KeyValueTable.Section sectionFor(KeyValueTable table, String sheetName, boolean continued,
+                                                    ShardedWorkbookWriter.Continuations continuations) {
+        List<KeyValueTable.Section> sections = table.getSections();
+        if (continued && !sections.isEmpty()) {
+            KeyValueTable.Section previous = sections.get(sections.size() - 1);
+            if (previous.getName().equals(continuations.getSectionName())) {
+                return previous;
+            }
+        }
+        return table.newSection(sheetName, true);
+    }
+
+    /**
+     * Adds a section that has data rows (unless it is already there, being continued) and marks
+     * it as an array once it has more than one row.
+     */
+    private static void addIfNew(KeyValueTable table, KeyValueTable.Section section) {
+        if (section.getRowCount() == 0) {
+            return;
+        }
+        section.setArray(section.getRowCount() > 1);
+        List<KeyValueTable.Section> sections = table.getSections();
+        if (sections.isEmpty() || sections.get(sections.size() - 1) != section) {
+            table.addSection(section);
+        }
+    }
+
+    /**
+     * Writes one sheet per section, workbook set up like JsonToExcelBatch's (tan header row, column
+     * widths, and the same sheet and workbook limits: large sections continue on "name#2" sheets
+     * and in file.part2.xlsx, ...).
+     */
+    public static void writeXlsx(KeyValueTable table, File file) throws IOException {
+        try (ShardedWorkbookWriter writer = JsonToExcelBatch.newWorkbookWriter(file, null)) {
+            for (KeyValueTable.Section section : table.getSections()) {
+                writeSection(writer, section);
+            }
+            writer.finish();
+        }
+    }
+
+    /**
+     * Writes a section as a sheet named after it: a header row of its columns and one row per
+     * table row.
+     */
+    static void writeSection(ShardedWorkbookWriter writer, KeyValueTable.Section section) throws IOException {
+        writer.startSheet(section.getName(), section.getColumnNames());
+        String[] values = new String[section.getColumnCount()];
+        for (int r = 0; r < section.getRowCount(); r++) {
+            for (int c = 0; c < values.length; c++) {
+                values[c] = section.get(r, c);
+            }
+            writer.addRow(values);
+        }
+        writer.endSheet();
+    }
+
+    /**
+     * Adds every section, row and cell a reader reports to a table: KeyValueJsonReader or
+     * MappedJsonReader for JSON, SheetSectionHandler for XLSX.
+     */
+    private static class TableJsonHandler implements KeyValueJsonReader.Handler {
+        private final KeyValueTable table;
+        private KeyValueTable.Section section;
+
+        TableJsonHandler(KeyValueTable table) {
+            this.table = table;
+        }
+
+        @Override
+        public void property(String name, String value) {
+            table.setProperty(name, value);
+        }
+
+        @Override
+        public void startSection(String name, boolean array) {
+            section = table.addSection(name, array);
+        }
+
+        @Override
+        public void startRow() {
+            section.addRow();
+        }
+
+        @Override
+        public void cell(String attribute, String value) {
+            section.put(attribute, value);
+        }
+
+        @Override
+        public void endRow() {
+        }
+
+        @Override
+        public void endSection() {
+            section = null;
+        }
+    }
+
+    // ---------------------------------------------------------------- CSV
+
+    /**
+     * Reads a CSV whose first record is the header into a single array section.
+     * Short records are padded with "".
+     */
+    public static KeyValueTable readCsv(Reader reader, String sectionName) throws IOException {
+        KeyValueTable table = new KeyValueTable();
+        KeyValueTable.Section section = table.addSection(sectionName, true);
+        try (CSVParser parser = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build().parse(reader)) {
+            List<String> headers = parser.getHeaderNames();
+            int[] columns = new int[headers.size()];
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = section.addColumn(headers.get(c));
+            }
+            for (CSVRecord record : parser) {
+                int row = section.addRow();
+                for (int c = 0; c < columns.length; c++) {
+                    section.set(row, columns[c], c < record.size() ? record.get(c) : "");
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Writes the section with its own column order.
+     */
+    public static void writeCsv(KeyValueTable.Section section, Writer out) throws IOException {
+        writeCsv(section, out, section.getColumnNames());
+    }
+
+    /**
+     * Writes the section with the given header. Header names the section doesn't have become
+     * empty columns; section columns missing from the header are appended after it.
+     */
+    public static void writeCsv(KeyValueTable.Section section, Writer out, List<String> header) throws IOException {
+        List<String> names = new ArrayList<>(header);
+        Set<String> seen = new HashSet<>(header);
+        for (String name : section.getColumnNames()) {
+            if (seen.add(name)) {
+                names.add(name);
+            }
+        }
+        int[] columns = new int[names.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = section.columnOf(names.get(i));
+        }
+
+        CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.builder().setHeader(names.toArray(new String[0])).build());
+        String[] record = new String[columns.length];
+        for (int r = 0; r < section.getRowCount(); r++) {
+            for (int i = 0; i < columns.length; i++) {
+                record[i] = (columns[i] < 0) ? null : section.get(r, columns[i]);
+            }
+            printer.printRecord((Object[]) record);
+        }
+        printer.flush();
+    }
+
+    private static Writer newWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+}
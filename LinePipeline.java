@@ -0,0 +1,146 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipelined processing of a line-delimited file (JSONL): the calling thread reads lines and
+ * submits each one to a pool of workers, and a single consumer thread takes the results in line
+ * order. A bounded queue sits between the reader and the consumer, so the reader never gets more
+ * than queueCapacity lines ahead and memory stays flat however long the file is.
+ *
+ * A line whose worker throws is reported and skipped; an exception from the consumer stops the
+ * whole run and is rethrown.
+ *
+ * The workers are either a pool of the pipeline's own, or a pool shared with other pipelines
+ * (which bounds the work in flight across all of them); a shared pool is left running.
+ */
+public class LinePipeline<T> {
+
+    @FunctionalInterface
+    public interface Worker<T> {
+        T process(long lineNumber, String line) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Consumer<T> {
+        void accept(long lineNumber, T result) throws Exception;
+    }
+
+    private static final Future<Object> END = CompletableFuture.completedFuture(null);
+
+    private final int workers;
+    private final ExecutorService sharedPool;
+    private final int queueCapacity;
+
+    public LinePipeline(int workers, int queueCapacity) {
+        this.workers = Math.max(1, workers);
+        this.sharedPool = null;
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    public LinePipeline(ExecutorService sharedPool, int queueCapacity) {
+        this.workers = 0;
+        this.sharedPool = sharedPool;
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Runs every non-blank line of reader through worker, then consumer. Returns the number of
+     * lines that failed in the worker.
+     */
+    public long run(BufferedReader reader, Worker<T> worker, Consumer<T> consumer) throws Exception {
+        BlockingQueue<Entry<T>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        ExecutorService pool = (sharedPool != null) ? sharedPool : Executors.newFixedThreadPool(workers);
+        ExecutorService consumerThread = Executors.newSingleThreadExecutor();
+        long[] failed = new long[1];
+
+        try {
+            Future<?> consumed = consumerThread.submit(() -> {
+                while (true) {
+                    Entry<T> entry = queue.take();
+                    if (entry.result == END) {
+                        return null;
+                    }
+                    T result;
+                    try {
+                        result = entry.result.get();
+                    } catch (ExecutionException e) {
+                        failed[0]++;
+                        System.out.println("Skipping line " + entry.lineNumber + ": " + e.getCause());
+                        continue;
+                    }
+                    consumer.accept(entry.lineNumber, result);
+                }
+            });
+
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) continue;
+
+                long number = lineNumber;
+                String text = line;
+                Entry<T> entry = new Entry<>(number, pool.submit(() -> worker.process(number, text)));
+                enqueue(queue, entry, consumed);
+            }
+            enqueue(queue, new Entry<>(lineNumber, endMarker()), consumed);
+
+            awaitConsumer(consumed);
+            return failed[0];
+        } finally {
+            if (sharedPool == null) {
+                pool.shutdownNow();
+            } else {
+                // Lines nobody will consume shouldn't keep the other pipelines' workers busy
+                for (Entry<T> entry : queue) {
+                    entry.result.cancel(true);
+                }
+            }
+            consumerThread.shutdownNow();
+        }
+    }
+
+    /**
+     * Blocks while the queue is full, but gives up (rethrowing its error) if the consumer died.
+     */
+    private static <T> void enqueue(BlockingQueue<Entry<T>> queue, Entry<T> entry, Future<?> consumed) throws Exception {
+        do {
+            if (consumed.isDone()) {
+                awaitConsumer(consumed);
+            }
+        } while (!queue.offer(entry, 100, TimeUnit.MILLISECONDS));
+    }
+
+    private static void awaitConsumer(Future<?> consumed) throws Exception {
+        try {
+            consumed.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Future<T> endMarker() {
+        return (Future<T>) END;
+    }
+
+    private static class Entry<T> {
+        final long lineNumber;
+        final Future<T> result;
+
+        Entry(long lineNumber, Future<T> result) {
+            this.lineNumber = lineNumber;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package com.example;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Byte-level counterpart of {@link KeyValueJsonReader} for request files on disk: same layouts,
+ * same Handler events, same value conversion, but the file is memory-mapped and tokenized as
+ * UTF-8 bytes instead of being decoded into chars first.
+ *
+ * Keys are matched against the few names the layouts need (benefitRequest, dataSet, CVS,
+ * keyValue, attribute, value) as bytes, and everything else - unknown keys, skipped subtrees,
+ * whitespace - is stepped over without creating a String. Only the strings handed to the Handler
+ * (section names, attributes, values, top-level properties) are ever decoded, straight from the
+ * mapped bytes.
+ *
+ * The accepted syntax is KeyValueJsonReader's, which is stricter than new JSONObject(String): keys
+ * must be quoted (single or double quotes), so a request with unquoted keys, which the DOM path of
+ * JsonToExcelBatch would accept, is rejected here as malformed JSON. Unquoted values (numbers,
+ * true/false/null, bare words) are read the same way JSONTokener reads them. The one difference from
+ * KeyValueJsonReader: an escaped lone surrogate (one half of a pair without the other) has no UTF-8
+ * form and becomes U+FFFD.
+ *
+ * Large files are mapped WINDOW_SIZE bytes at a time (a single mapping is limited to 2 GB); files
+ * below MAP_MIN_BYTES are read into one heap buffer instead, which is cheaper for small files and
+ * doesn't keep the file locked on Windows until the mapping is collected.
+ */
+public class MappedJsonReader {
+
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+    private static final long MAP_MIN_BYTES = 4L * 1024 * 1024;
+
+    private static final byte[] BENEFIT_REQUEST = ascii("benefitRequest");
+    private static final byte[] DATA_SET = ascii("dataSet");
+    private static final byte[] CVS = ascii("CVS");
+    private static final byte[] KEY_VALUE = ascii("keyValue");
+    private static final byte[] ATTRIBUTE = ascii("attribute");
+    private static final byte[] VALUE = ascii("value");
+
+    private final FileChannel channel;
+    private final long size;
+    private final KeyValueJsonReader.Handler handler;
+
+    private ByteBuffer window;
+    private long windowStart;
+    private int windowLimit;
+    private int index;
+
+    // UTF-8 bytes of the last key or string read; appended to while capturing a raw value
+    private byte[] text = new byte[256];
+    private int textLength;
+    private boolean capturing;
+
+    private MappedJsonReader(FileChannel channel, KeyValueJsonReader.Handler handler) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.handler = handler;
+    }
+
+    /**
+     * Reads the whole file and reports it to the handler.
+     */
+    public static void read(File file, KeyValueJsonReader.Handler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedJsonReader reader = new MappedJsonReader(channel, handler);
+            try {
+                reader.load(0);
+                reader.skipByteOrderMark();
+                reader.readRoot();
+            } catch (JSONException e) {
+                throw new IOException("Malformed request JSON: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- structure (as in KeyValueJsonReader)
+
+    private void readRoot() throws IOException {
+        expect('{');
+        if (endOfScope('}')) return;
+        do {
+            readKey();
+            if (keyIs(BENEFIT_REQUEST) && peek() == '{') {
+                readBenefitRequest();
+            } else if (keyIs(KEY_VALUE) && peek() == '[') {
+                readSection("keyValue");
+            } else {
+                readProperty(textString());
+            }
+        } while (nextMember('}'));
+    }
+
+    private void readBenefitRequest() throws IOException {
+        expect('{');
+        if (endOfScope('}')) return;
+        do {
+            readKey();
+            if (keyIs(DATA_SET) && peek() == '{') {
+                readDataSet();
+            } else {
+                readProperty(textString());
+            }
+        } while (nextMember('}'));
+    }
+
+    private void readDataSet() throws IOException {
+        expect('{');
+        if (endOfScope('}')) return;
+        do {
+            readKey();
+            if (keyIs(CVS) && peek() == '{') {
+                expect('{');
+                if (endOfScope('}')) continue;
+                do {
+                    readKey();
+                    readSection(textString());
+                } while (nextMember('}'));
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+    }
+
+    private void readSection(String name) throws IOException {
+        int next = peek();
+        if (next == '{') {
+            handler.startSection(name, false);
+            readElement();
+            handler.endSection();
+        } else if (next == '[') {
+            handler.startSection(name, true);
+            expect('[');
+            if (!endOfScope(']')) {
+                do {
+                    if (peek() == '{') {
+                        readElement();
+                    } else {
+                        skipValue();
+                    }
+                } while (nextMember(']'));
+            }
+            handler.endSection();
+        } else {
+            skipValue();
+        }
+    }
+
+    private void readElement() throws IOException {
+        expect('{');
+        if (endOfScope('}')) return;
+        do {
+            readKey();
+            if (keyIs(KEY_VALUE) && peek() == '[') {
+                handler.startRow();
+                expect('[');
+                if (!endOfScope(']')) {
+                    do {
+                        readAttributeValue();
+                    } while (nextMember(']'));
+                }
+                handler.endRow();
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+    }
+
+    private void readAttributeValue() throws IOException {
+        if (peek() != '{') {
+            skipValue();
+            return;
+        }
+        String attribute = null;
+        String value = "";
+
+        expect('{');
+        if (!endOfScope('}')) {
+            do {
+                readKey();
+                if (keyIs(ATTRIBUTE)) {
+                    attribute = readScalar();
+                } else if (keyIs(VALUE)) {
+                    String raw = readScalar();
+                    value = (raw == null) ? "" : raw;
+                } else {
+                    skipValue();
+                }
+            } while (nextMember('}'));
+        }
+        if (attribute != null) {
+            handler.cell(attribute, value);
+        }
+    }
+
+    private void readProperty(String key) throws IOException {
+        int next = peek();
+        if (next == '{' || next == '[') {
+            skipValue();
+        } else {
+            handler.property(key, readScalar());
+        }
+    }
+
+    // ---------------------------------------------------------------- values
+
+    /**
+     * Reads any value and returns it like JSONTokener.nextValue().toString() would, or null for
+     * JSON null. Objects and arrays (rare here) are captured raw and handed to JSONTokener.
+     */
+    private String readScalar() throws IOException {
+        int c = nextClean();
+        if (c == '"' || c == '\'') {
+            readString(c);
+            return textString();
+        }
+        back(c);
+        if (c == '{' || c == '[') {
+            textLength = 0;
+            capturing = true;
+            try {
+                skipValue();
+            } finally {
+                capturing = false;
+            }
+            Object parsed = new JSONTokener(textString()).nextValue();
+            return parsed.toString();
+        }
+        readLiteral();
+        Object parsed = JSONObject.stringToValue(textString().trim());
+        return JSONObject.NULL.equals(parsed) ? null : parsed.toString();
+    }
+
+    /**
+     * Steps over one value without decoding it.
+     */
+    private void skipValue() throws IOException {
+        int c = nextClean();
+        if (c == '"' || c == '\'') {
+            skipString(c);
+        } else if (c == '{' || c == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                c = next();
+                if (c == '"' || c == '\'') {
+                    skipString(c);
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                } else if (c < 0) {
+                    throw syntaxError("Unterminated " + (depth > 1 ? "nested value" : "object or array"));
+                }
+            }
+        } else {
+            back(c);
+            readLiteral();
+        }
+    }
+
+    /**
+     * Unquoted token (number, true, false, null) into text; ends where JSONTokener ends one.
+     */
+    private void readLiteral() throws IOException {
+        if (!capturing) {
+            textLength = 0;
+        }
+        int start = textLength;
+        int c = next();
+        while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
+            if (!capturing) {
+                append(c);
+            }
+            c = next();
+        }
+        back(c);
+        if (textLength == start) {
+            throw syntaxError("Missing value");
+        }
+    }
+
+    // ---------------------------------------------------------------- strings and keys
+
+    private void readKey() throws IOException {
+        int quote = nextClean();
+        if (quote != '"' && quote != '\'') {
+            throw syntaxError("Expected a quoted key");
+        }
+        readString(quote);
+        expect(':');
+    }
+
+    private boolean keyIs(byte[] name) {
+        return Arrays.equals(text, 0, textLength, name, 0, name.length);
+    }
+
+    private String textString() {
+        return new String(text, 0, textLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the rest of a quoted string (opening quote already consumed) into text as UTF-8,
+     * resolving escapes the way JSONTokener.nextString() does.
+     */
+    private void readString(int quote) throws IOException {
+        textLength = 0;
+        int highSurrogate = -1;
+        while (true) {
+            int c = next();
+            if (c <= 0 || c == '\n' || c == '\r') {
+                throw syntaxError("Unterminated string");
+            }
+            if (c == quote) {
+                break;
+            }
+            if (c != '\\') {
+                if (highSurrogate >= 0) {
+                    appendCodePoint(0xFFFD);
+                    highSurrogate = -1;
+                }
+                append(c);
+                continue;
+            }
+            c = next();
+            if (c == 'u') {
+                int unit = readHex4();
+                if (highSurrogate >= 0 && Character.isLowSurrogate((char) unit)) {
+                    appendCodePoint(Character.toCodePoint((char) highSurrogate, (char) unit));
+                    highSurrogate = -1;
+                    continue;
+                }
+                if (highSurrogate >= 0) {
+                    appendCodePoint(0xFFFD);
+                    highSurrogate = -1;
+                }
+                if (Character.isHighSurrogate((char) unit)) {
+                    highSurrogate = unit;
+                } else {
+                    appendCodePoint(Character.isLowSurrogate((char) unit) ? 0xFFFD : unit);
+                }
+                continue;
+            }
+            if (highSurrogate >= 0) {
+                appendCodePoint(0xFFFD);
+                highSurrogate = -1;
+            }
+            switch (c) {
+                case 'b': append('\b'); break;
+                case 't': append('\t'); break;
+                case 'n': append('\n'); break;
+                case 'f': append('\f'); break;
+                case 'r': append('\r'); break;
+                case '"':
+                case '\'':
+                case '\\':
+                case '/': append(c); break;
+                default: throw syntaxError("Illegal escape.");
+            }
+        }
+        if (highSurrogate >= 0) {
+            appendCodePoint(0xFFFD);
+        }
+    }
+
+    private void skipString(int quote) throws IOException {
+        while (true) {
+            int c = next();
+            if (c <= 0 || c == '\n' || c == '\r') {
+                throw syntaxError("Unterminated string");
+            }
+            if (c == quote) {
+                return;
+            }
+            if (c == '\\') {
+                next();
+            }
+        }
+    }
+
+    private int readHex4() throws IOException {
+        int unit = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(next(), 16);
+            if (digit < 0) {
+                throw syntaxError("Illegal escape.");
+            }
+            unit = (unit << 4) | digit;
+        }
+        return unit;
+    }
+
+    private void append(int b) {
+        if (textLength == text.length) {
+            text = Arrays.copyOf(text, text.length * 2);
+        }
+        text[textLength++] = (byte) b;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            append(codePoint);
+        } else if (codePoint < 0x800) {
+            append(0xC0 | (codePoint >> 6));
+            append(0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            append(0xE0 | (codePoint >> 12));
+            append(0x80 | ((codePoint >> 6) & 0x3F));
+            append(0x80 | (codePoint & 0x3F));
+        } else {
+            append(0xF0 | (codePoint >> 18));
+            append(0x80 | ((codePoint >> 12) & 0x3F));
+            append(0x80 | ((codePoint >> 6) & 0x3F));
+            append(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    // ---------------------------------------------------------------- tokens
+
+    private int peek() throws IOException {
+        int c = nextClean();
+        back(c);
+        return c;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (nextClean() != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+    }
+
+    private boolean endOfScope(char closing) throws IOException {
+        int c = nextClean();
+        if (c == closing) {
+            return true;
+        }
+        back(c);
+        return false;
+    }
+
+    private boolean nextMember(char closing) throws IOException {
+        int c = nextClean();
+        if (c == ',') return true;
+        if (c == closing) return false;
+        throw syntaxError("Expected ',' or '" + closing + "'");
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at byte " + (windowStart + index));
+    }
+
+    // ---------------------------------------------------------------- bytes
+
+    /**
+     * Next byte after whitespace, or -1 at the end of the file.
+     */
+    private int nextClean() throws IOException {
+        int c;
+        do {
+            c = next();
+        } while (c >= 0 && c <= ' ');
+        return c;
+    }
+
+    /**
+     * Next byte (0-255), or -1 at the end of the file; recorded in text while capturing.
+     */
+    private int next() throws IOException {
+        int c = nextRaw();
+        if (capturing && c >= 0) {
+            append(c);
+        }
+        return c;
+    }
+
+    private int nextRaw() throws IOException {
+        if (index == windowLimit) {
+            long position = windowStart + windowLimit;
+            if (position >= size) {
+                return -1;
+            }
+            load(position);
+        }
+        return window.get(index++) & 0xFF;
+    }
+
+    /**
+     * Steps back over the byte just read (a no-op at the end of the file).
+     */
+    private void back(int c) {
+        if (c >= 0) {
+            index--;
+            if (capturing) {
+                textLength--;
+            }
+        }
+    }
+
+    private void load(long position) throws IOException {
+        if (size < MAP_MIN_BYTES) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+                // read until full
+            }
+            buffer.flip();
+            window = buffer;
+        } else {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+        }
+        windowStart = position;
+        windowLimit = window.limit();
+        index = 0;
+    }
+
+    private void skipByteOrderMark() throws IOException {
+        if (nextRaw() == 0xEF && nextRaw() == 0xBB && nextRaw() == 0xBF) {
+            return;
+        }
+        index = 0;
+    }
+
+    private static byte[] ascii(String name) {
+        return name.getBytes(StandardCharsets.US_ASCII);
+    }
+}
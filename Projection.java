@@ -0,0 +1,150 @@
+package com.example;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * The sheets and attributes (header columns) a conversion should keep, e.g.
+ *
+ *   --sheets=Copay,Deductible --attributes=PlanCode,CopayAmount
+ *
+ * Either list left out keeps everything. Names are matched exactly; a shard sheet ("Copay#2") is
+ * selected by the name of its section ("Copay").
+ */
+public class Projection {
+
+    /** Keeps every sheet and every column. */
+    public static final Projection ALL = new Projection(null, null);
+
+    private final Set<String> sheets;
+    private final Set<String> attributes;
+
+    /**
+     * @param sheets     section names to keep, null for all
+     * @param attributes attributes to keep, null for all
+     */
+    public Projection(Collection<String> sheets, Collection<String> attributes) {
+        this.sheets = (sheets == null) ? null : new LinkedHashSet<>(sheets);
+        this.attributes = (attributes == null) ? null : new LinkedHashSet<>(attributes);
+    }
+
+    /**
+     * Builds a projection from comma-separated lists (null or blank for all).
+     */
+    public static Projection parse(String sheets, String attributes) {
+        return new Projection(split(sheets), split(attributes));
+    }
+
+    public boolean includesSheet(String sectionName) {
+        return sheets == null || sheets.contains(sectionName);
+    }
+
+    public boolean includesAttribute(String attribute) {
+        return attributes == null || attributes.contains(attribute);
+    }
+
+    public boolean isAll() {
+        return sheets == null && attributes == null;
+    }
+
+    @Override
+    public String toString() {
+        return "sheets=" + (sheets == null ? "*" : String.join(",", sheets))
+                + " attributes=" + (attributes == null ? "*" : String.join(",", attributes));
+    }
+
+    private static Set<String> split(String list) {
+        if (list == null || list.trim().isEmpty()) {
+            return null;
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : Arrays.asList(list.split(","))) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Sits between the XML parser and XSSFSheetXMLHandler and drops whole &lt;c&gt; elements of the
+     * columns keepColumn rejects, so their values are never looked up in the shared strings or
+     * formatted. Cells without a reference are passed on.
+     */
+    public static class CellFilter extends XMLFilterImpl {
+        private final IntPredicate keepColumn;
+        // > 0 while inside a dropped cell: the element depth within it
+        private int skipDepth;
+
+        public CellFilter(XMLReader parent, IntPredicate keepColumn) {
+            super(parent);
+            this.keepColumn = keepColumn;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+            if (skipDepth > 0) {
+                skipDepth++;
+                return;
+            }
+            if ("c".equals(localName)) {
+                String ref = atts.getValue("r");
+                if (ref != null && !keepColumn.test(columnOf(ref))) {
+                    skipDepth = 1;
+                    return;
+                }
+            }
+            super.startElement(uri, localName, qName, atts);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (skipDepth > 0) {
+                skipDepth--;
+                return;
+            }
+            super.endElement(uri, localName, qName);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (skipDepth == 0) {
+                super.characters(ch, start, length);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            if (skipDepth == 0) {
+                super.ignorableWhitespace(ch, start, length);
+            }
+        }
+
+        /**
+         * Zero-based column of a cell reference such as "AB12" (the letters only, without the
+         * CellReference parsing the handler does for the cells that are kept).
+         */
+        static int columnOf(String ref) {
+            int col = 0;
+            for (int i = 0; i < ref.length(); i++) {
+                char c = ref.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    col = col * 26 + (c - 'A' + 1);
+                } else if (c >= 'a' && c <= 'z') {
+                    col = col * 26 + (c - 'a' + 1);
+                } else if (c != '$') {
+                    break;
+                }
+            }
+            return col - 1;
+        }
+    }
+}
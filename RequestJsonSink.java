@@ -0,0 +1,145 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes a request as normalized benefitRequest JSON, streamed as the rows arrive. Within a row
+ * attributes are written in the order the section first saw them (each once, last value
+ * wins), which gives the same output as KeyValueTableIO.writeRequestJson. Properties that
+ * only appear after the CVS sections are written after dataSet.
+ */
+public class RequestJsonSink implements FanOutPipeline.Sink {
+
+    private final JsonStreamWriter json;
+    private final Map<String, String> properties = new LinkedHashMap<>();
+    private boolean inDataSet;
+
+    private boolean array;
+    private int sectionRows;
+    private ColumnDictionary.Columns columns;
+    private String[] rowValues = new String[16];
+    private boolean[] present = new boolean[16];
+
+    /**
+     * @param out receives the JSON and is closed by finish() or abort()
+     */
+    public RequestJsonSink(Writer out) {
+        this.json = new JsonStreamWriter(out, 4);
+    }
+
+    @Override
+    public void property(String name, String value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public void startSection(String name, boolean array) throws IOException {
+        if (!inDataSet) {
+            beginDataSet();
+        }
+        this.array = array;
+        this.sectionRows = 0;
+        this.columns = new ColumnDictionary().newColumns();
+        json.name(name);
+        if (array) {
+            json.beginArray();
+        }
+    }
+
+    @Override
+    public void startRow() {
+        Arrays.fill(present, false);
+    }
+
+    @Override
+    public void cell(String attribute, String value) {
+        int column = columns.add(attribute);
+        if (column >= rowValues.length) {
+            rowValues = Arrays.copyOf(rowValues, Math.max(column + 1, rowValues.length * 2));
+            present = Arrays.copyOf(present, rowValues.length);
+        }
+        rowValues[column] = value;
+        present[column] = true;
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        // A single-object section only writes its first keyValue list
+        if (array || sectionRows == 0) {
+            json.beginObject().name("keyValue").beginArray();
+            for (int c = 0; c < columns.size(); c++) {
+                if (!present[c]) continue;
+                json.beginObject();
+                json.name("attribute").value(columns.nameAt(c));
+                json.name("value").value(rowValues[c]);
+                json.endObject();
+            }
+            json.endArray().endObject();
+        }
+        sectionRows++;
+    }
+
+    @Override
+    public void endSection() throws IOException {
+        if (array) {
+            json.endArray();
+        } else if (sectionRows == 0) {
+            json.beginObject().name("keyValue").beginArray().endArray().endObject();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        try {
+            if (!inDataSet) {
+                beginDataSet();
+            }
+            json.endObject().endObject();
+            // Properties that came after the dataSet
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                json.name(property.getKey()).value(property.getValue());
+            }
+            json.endObject().endObject();
+            json.flush();
+        } finally {
+            json.close();
+        }
+    }
+
+    @Override
+    public void abort() {
+        try { json.close(); } catch (IOException e) { /* ignore */ }
+    }
+
+    /**
+     * Writes the envelope and the properties seen so far (with KeyValueTableIO's placeholders),
+     * then opens dataSet.CVS.
+     */
+    private void beginDataSet() throws IOException {
+        json.beginObject().name("benefitRequest").beginObject();
+        json.name("transactionID").value(orDefault(properties.remove("transactionID"), "PLACEHOLDER"));
+        json.name("clientCode").value(orDefault(properties.remove("clientCode"), "PLACEHOLDER"));
+        String data = properties.remove("data");
+        json.name("data");
+        if (data == null || data.isEmpty()) {
+            json.nullValue();
+        } else {
+            json.value(data);
+        }
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            json.name(property.getKey()).value(property.getValue());
+        }
+        properties.clear();
+
+        json.name("dataSet").beginObject().name("CVS").beginObject();
+        inDataSet = true;
+    }
+
+    private static String orDefault(String value, String defaultValue) {
+        return (value == null) ? defaultValue : value;
+    }
+}
@@ -0,0 +1,246 @@
+package com.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sparse rows kept until the full set of columns is known, compactly: every cell is three ints
+ * (column index, offset and length of its value) in one int[] and the values' characters are
+ * appended to one char[], so a cell costs 12 bytes plus its text instead of a String (and org.json
+ * objects) per value. Once the buffer holds more than spillThreshold bytes, its rows move to a
+ * RowSpillFile and the rest are appended there, so a section can be larger than the heap.
+ * Buffers that are filled side by side can instead share one budget: a buffer spills once the
+ * rows of all of them would exceed it, and gives its bytes back when it spills or is closed.
+ *
+ * Same usage as RowSpillFile: append() every row, then open a Cursor to read them back in order;
+ * close() releases the memory and deletes the spill file.
+ */
+public class RowBuffer implements Closeable {
+
+    /** Bytes a buffer holds in memory before spilling, unless given otherwise: 64 MB, or 1/16 of the heap if less. */
+    public static final long DEFAULT_SPILL_THRESHOLD =
+            Math.min(64L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 16);
+
+    // Array sizes stay below this so offsets and growth never overflow an int
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 16;
+
+    private final long spillThreshold;
+    // Bytes this and other buffers may still take, or null if only spillThreshold applies
+    private final AtomicLong sharedBudget;
+    private long sharedBytes;
+
+    // Per row: its cell count, then (column, text offset, text length) per cell
+    private int[] cells = new int[256];
+    private int cellsSize;
+    private char[] text = new char[1024];
+    private int textSize;
+
+    private RowSpillFile spill;
+    private long rowCount;
+
+    public RowBuffer() {
+        this(DEFAULT_SPILL_THRESHOLD);
+    }
+
+    /**
+     * @param spillThreshold bytes of rows kept in memory; 0 spills from the first row
+     */
+    public RowBuffer(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+        this.sharedBudget = null;
+    }
+
+    /**
+     * A buffer that takes its rows' bytes from a budget shared with other buffers, e.g. a new
+     * AtomicLong(RowBuffer.DEFAULT_SPILL_THRESHOLD) for all of them.
+     */
+    public RowBuffer(AtomicLong sharedBudget) {
+        this.spillThreshold = sharedBudget.get();
+        this.sharedBudget = sharedBudget;
+    }
+
+    /**
+     * Appends one row made of the first count (column, value) pairs. Values must not be null.
+     */
+    public void append(int[] columns, String[] values, int count) throws IOException {
+        if (spill == null && !fits(columns, values, count)) {
+            spill();
+        }
+        if (spill != null) {
+            spill.append(columns, values, count);
+            rowCount++;
+            return;
+        }
+
+        int needed = cellsSize + 1 + 3 * count;
+        if (needed > cells.length) {
+            cells = Arrays.copyOf(cells, grow(cells.length, needed, spillThreshold / Integer.BYTES));
+        }
+        cells[cellsSize++] = count;
+        for (int i = 0; i < count; i++) {
+            String value = values[i];
+            int length = value.length();
+            if (textSize + length > text.length) {
+                text = Arrays.copyOf(text, grow(text.length, textSize + length, spillThreshold / Character.BYTES));
+            }
+            value.getChars(0, length, text, textSize);
+            cells[cellsSize++] = columns[i];
+            cells[cellsSize++] = textSize;
+            cells[cellsSize++] = length;
+            textSize += length;
+        }
+        rowCount++;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Whether the rows went to a temp file.
+     */
+    public boolean isSpilled() {
+        return spill != null;
+    }
+
+    /**
+     * Returns a cursor over all rows, in the order they were appended. Nothing may be appended
+     * after this. Several cursors may be open at once and read on different threads, as long as
+     * they are all opened on the thread that appended the rows.
+     */
+    public Cursor openCursor() throws IOException {
+        return (spill != null) ? new Cursor(spill.openCursor()) : new Cursor(null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        cells = null;
+        text = null;
+        releaseShared();
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    /**
+     * Whether the row can still be kept in memory.
+     */
+    private boolean fits(int[] columns, String[] values, int count) {
+        long rowText = 0;
+        for (int i = 0; i < count; i++) {
+            rowText += values[i].length();
+        }
+        long newCells = cellsSize + 1 + 3L * count;
+        long newText = textSize + rowText;
+        if (newCells > MAX_ARRAY || newText > MAX_ARRAY
+                || newCells * Integer.BYTES + newText * Character.BYTES > spillThreshold) {
+            return false;
+        }
+        if (sharedBudget != null) {
+            long rowBytes = (1 + 3L * count) * Integer.BYTES + rowText * Character.BYTES;
+            if (sharedBudget.addAndGet(-rowBytes) < 0) {
+                sharedBudget.addAndGet(rowBytes);
+                return false;
+            }
+            sharedBytes += rowBytes;
+        }
+        return true;
+    }
+
+    private void releaseShared() {
+        if (sharedBudget != null) {
+            sharedBudget.addAndGet(sharedBytes);
+            sharedBytes = 0;
+        }
+    }
+
+    /**
+     * Moves the rows buffered so far to a spill file; later rows are appended there directly.
+     */
+    private void spill() throws IOException {
+        spill = new RowSpillFile();
+        int[] columns = new int[16];
+        String[] values = new String[16];
+        Cursor cursor = new Cursor(null);
+        while (cursor.next()) {
+            if (cursor.size() > columns.length) {
+                columns = new int[cursor.size()];
+                values = new String[cursor.size()];
+            }
+            for (int i = 0; i < cursor.size(); i++) {
+                columns[i] = cursor.column(i);
+                values[i] = cursor.value(i);
+            }
+            spill.append(columns, values, cursor.size());
+        }
+        cells = new int[0];
+        cellsSize = 0;
+        text = new char[0];
+        textSize = 0;
+        releaseShared();
+    }
+
+    /**
+     * Doubles the array, but not past what the threshold allows, so a full buffer doesn't take
+     * twice the threshold.
+     */
+    private static int grow(int length, int needed, long limit) {
+        return (int) Math.min(MAX_ARRAY, Math.max(needed, Math.min(length * 2L, limit)));
+    }
+
+    /**
+     * Reads the rows back one at a time, from memory or from the spill file.
+     */
+    public class Cursor implements Closeable {
+        private final RowSpillFile.Cursor spilled;
+        private int position;
+        private int row = -1;
+        private int size;
+
+        private Cursor(RowSpillFile.Cursor spilled) {
+            this.spilled = spilled;
+        }
+
+        /**
+         * Moves to the next row; false when there are no more rows.
+         */
+        public boolean next() throws IOException {
+            if (spilled != null) {
+                return spilled.next();
+            }
+            if (position >= cellsSize) {
+                return false;
+            }
+            size = cells[position];
+            row = position + 1;
+            position = row + 3 * size;
+            return true;
+        }
+
+        /** Number of cells in the current row. */
+        public int size() {
+            return (spilled != null) ? spilled.size() : size;
+        }
+
+        public int column(int i) {
+            return (spilled != null) ? spilled.column(i) : cells[row + 3 * i];
+        }
+
+        public String value(int i) {
+            if (spilled != null) {
+                return spilled.value(i);
+            }
+            int cell = row + 3 * i;
+            return new String(text, cells[cell + 1], cells[cell + 2]);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spilled != null) {
+                spilled.close();
+            }
+        }
+    }
+}
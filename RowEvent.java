@@ -0,0 +1,216 @@
+package com.example;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One item of a request as a stream of rows, in document order:
+ *
+ *   PROPERTY        a benefitRequest property (transactionID, clientCode, ...)
+ *   START_SECTION   a CVS section begins (single object or array)
+ *   ROW             one "keyValue" list of the current section: its attributes and values
+ *   END_SECTION     the current section is complete
+ *
+ * These are the KeyValueJsonReader.Handler callbacks with a row's cells gathered into one item.
+ * Events are immutable, so one can be handed to several consumers on different threads.
+ */
+public final class RowEvent {
+
+    public enum Kind { PROPERTY, START_SECTION, ROW, END_SECTION }
+
+    private static final String[] NO_CELLS = new String[0];
+
+    private final Kind kind;
+    private final String name;
+    private final String value;
+    private final boolean array;
+    private final String[] attributes;
+    private final String[] values;
+
+    private RowEvent(Kind kind, String name, String value, boolean array, String[] attributes, String[] values) {
+        this.kind = kind;
+        this.name = name;
+        this.value = value;
+        this.array = array;
+        this.attributes = attributes;
+        this.values = values;
+    }
+
+    public static RowEvent property(String name, String value) {
+        return new RowEvent(Kind.PROPERTY, name, value, false, NO_CELLS, NO_CELLS);
+    }
+
+    public static RowEvent startSection(String name, boolean array) {
+        return new RowEvent(Kind.START_SECTION, name, null, array, NO_CELLS, NO_CELLS);
+    }
+
+    /**
+     * A row of the given section; attributes[i] has values[i]. The arrays are taken as they are.
+     */
+    public static RowEvent row(String section, String[] attributes, String[] values) {
+        if (attributes.length != values.length) {
+            throw new IllegalArgumentException("attributes and values differ in length");
+        }
+        return new RowEvent(Kind.ROW, section, null, false, attributes, values);
+    }
+
+    public static RowEvent endSection(String name) {
+        return new RowEvent(Kind.END_SECTION, name, null, false, NO_CELLS, NO_CELLS);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * The property name, or the name of the section the event belongs to.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The property value (PROPERTY only).
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Whether the section is an array of rows rather than a single object (START_SECTION only).
+     */
+    public boolean isArray() {
+        return array;
+    }
+
+    public int size() {
+        return attributes.length;
+    }
+
+    public String getAttribute(int i) {
+        return attributes[i];
+    }
+
+    public String getValue(int i) {
+        return values[i];
+    }
+
+    /**
+     * The value of an attribute in this row (the last one if it repeats), or null.
+     */
+    public String get(String attribute) {
+        for (int i = attributes.length - 1; i >= 0; i--) {
+            if (attributes[i].equals(attribute)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    public List<String> getAttributes() {
+        return Collections.unmodifiableList(Arrays.asList(attributes));
+    }
+
+    public List<String> getValues() {
+        return Collections.unmodifiableList(Arrays.asList(values));
+    }
+
+    /**
+     * Replays this event as the reader callbacks it stands for.
+     */
+    public void deliver(KeyValueJsonReader.Handler handler) throws IOException {
+        switch (kind) {
+            case PROPERTY:
+                handler.property(name, value);
+                break;
+            case START_SECTION:
+                handler.startSection(name, array);
+                break;
+            case ROW:
+                handler.startRow();
+                for (int i = 0; i < attributes.length; i++) {
+                    handler.cell(attributes[i], values[i]);
+                }
+                handler.endRow();
+                break;
+            case END_SECTION:
+            default:
+                handler.endSection();
+                break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case PROPERTY:
+                return name + "=" + value;
+            case ROW:
+                StringBuilder row = new StringBuilder(name).append(" {");
+                for (int i = 0; i < attributes.length; i++) {
+                    row.append(i == 0 ? "" : ", ").append(attributes[i]).append('=').append(values[i]);
+                }
+                return row.append('}').toString();
+            default:
+                return kind + " " + name;
+        }
+    }
+
+    /**
+     * Turns reader callbacks back into events, which go to the consumer.
+     */
+    public static class Collector implements KeyValueJsonReader.Handler {
+
+        /**
+         * Receives each event as it is completed.
+         */
+        public interface Consumer {
+            void accept(RowEvent event) throws IOException;
+        }
+
+        private final Consumer consumer;
+        private final ArrayList<String> rowAttributes = new ArrayList<>();
+        private final ArrayList<String> rowValues = new ArrayList<>();
+        private String section;
+
+        public Collector(Consumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void property(String name, String value) throws IOException {
+            consumer.accept(RowEvent.property(name, value));
+        }
+
+        @Override
+        public void startSection(String name, boolean array) throws IOException {
+            section = name;
+            consumer.accept(RowEvent.startSection(name, array));
+        }
+
+        @Override
+        public void startRow() {
+            rowAttributes.clear();
+            rowValues.clear();
+        }
+
+        @Override
+        public void cell(String attribute, String value) {
+            rowAttributes.add(attribute);
+            rowValues.add(value);
+        }
+
+        @Override
+        public void endRow() throws IOException {
+            consumer.accept(RowEvent.row(section, rowAttributes.toArray(NO_CELLS), rowValues.toArray(NO_CELLS)));
+        }
+
+        @Override
+        public void endSection() throws IOException {
+            consumer.accept(RowEvent.endSection(section));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.example;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The readers as java.util.concurrent.Flow publishers of RowEvents, for use as a library:
+ *
+ *   RowSubscribers.SinkSubscriber csv = RowSubscribers.csv(response, "Copay");
+ *   RowPublishers.xlsx(request, executor).subscribe(csv);
+ *   csv.getResult().join();
+ *
+ * Each publisher reads its InputStream on one task of the given executor and hands the events to
+ * its subscriber through a SubmissionPublisher (deliveries run on the executor too). The reader
+ * only runs ahead of the subscriber's demand by bufferCapacity events and then waits, so a slow
+ * subscriber slows the reading down instead of letting events pile up. Cancelling the subscription
+ * stops the reading. The executor must be able to run two tasks at once (the reader waits for the
+ * deliveries); ForkJoinPool.commonPool() will do.
+ *
+ * A publisher reads its stream once, so it accepts a single subscriber. The stream is not closed.
+ */
+public class RowPublishers {
+
+    /**
+     * Reads a source and reports it to a handler; run once, on the executor.
+     */
+    interface Source {
+        void read(KeyValueJsonReader.Handler handler) throws Exception;
+    }
+
+    private RowPublishers() {
+    }
+
+    /**
+     * A benefitRequest JSON document (or a top-level "keyValue" array) in UTF-8, read with
+     * KeyValueJsonReader.
+     */
+    public static Flow.Publisher<RowEvent> json(InputStream in, Executor executor) {
+        return json(in, executor, Flow.defaultBufferSize());
+    }
+
+    public static Flow.Publisher<RowEvent> json(InputStream in, Executor executor, int bufferCapacity) {
+        Objects.requireNonNull(in);
+        return new SourcePublisher(executor, bufferCapacity, handler -> {
+            Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            KeyValueJsonReader.read(reader, handler);
+        });
+    }
+
+    /**
+     * A workbook, a section per sheet the way ExcelToJsonBatch reads it: the first row is the
+     * header, a sheet with one data row is a single object, sheets without data rows are left out,
+     * and "Copay#2", ... sheets continue "Copay". The package is read into memory (a stream has no
+     * random access), sheet contents are parsed with SAX.
+     */
+    public static Flow.Publisher<RowEvent> xlsx(InputStream in, Executor executor) {
+        return xlsx(in, Projection.ALL, executor, Flow.defaultBufferSize());
+    }
+
+    /**
+     * Same as above, keeping only the sheets and columns selected by projection.
+     */
+    public static Flow.Publisher<RowEvent> xlsx(InputStream in, Projection projection, Executor executor,
+                                                int bufferCapacity) {
+        Objects.requireNonNull(in);
+        Objects.requireNonNull(projection);
+        return new SourcePublisher(executor, bufferCapacity, handler -> readXlsx(in, projection, handler));
+    }
+
+    /**
+     * A CSV in UTF-8 whose first record is the header, as one array section named sectionName.
+     * Short records are padded with "".
+     */
+    public static Flow.Publisher<RowEvent> csv(InputStream in, String sectionName, Executor executor) {
+        return csv(in, sectionName, executor, Flow.defaultBufferSize());
+    }
+
+    public static Flow.Publisher<RowEvent> csv(InputStream in, String sectionName, Executor executor,
+                                               int bufferCapacity) {
+        Objects.requireNonNull(in);
+        Objects.requireNonNull(sectionName);
+        return new SourcePublisher(executor, bufferCapacity, handler -> readCsv(in, sectionName, handler));
+    }
+
+    // ---------------------------------------------------------------- publisher
+
+    /**
+     * Runs the source when subscribed and submits its events to the one subscriber.
+     */
+    private static class SourcePublisher implements Flow.Publisher<RowEvent> {
+        private final Executor executor;
+        private final int bufferCapacity;
+        private final Source source;
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+
+        SourcePublisher(Executor executor, int bufferCapacity, Source source) {
+            this.executor = Objects.requireNonNull(executor);
+            this.bufferCapacity = bufferCapacity;
+            this.source = source;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super RowEvent> subscriber) {
+            Objects.requireNonNull(subscriber);
+            if (!subscribed.compareAndSet(false, true)) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("Rows can only be read once; already subscribed"));
+                return;
+            }
+
+            SubmissionPublisher<RowEvent> publisher = new SubmissionPublisher<>(executor, bufferCapacity);
+            publisher.subscribe(subscriber);
+            try {
+                executor.execute(() -> produce(publisher));
+            } catch (RuntimeException e) {
+                publisher.closeExceptionally(e);
+            }
+        }
+
+        private void produce(SubmissionPublisher<RowEvent> publisher) {
+            try {
+                source.read(new RowEvent.Collector(event -> {
+                    if (!publisher.hasSubscribers()) {
+                        throw new Cancelled();
+                    }
+                    // waits while the subscriber's buffer is full
+                    publisher.submit(event);
+                }));
+                publisher.close();
+            } catch (Throwable e) {
+                if (publisher.hasSubscribers()) {
+                    publisher.closeExceptionally(e);
+                } else {
+                    // cancelled: nobody is listening any more
+                    publisher.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the source once the subscriber has cancelled.
+     */
+    private static class Cancelled extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Cancelled() {
+            super("Subscription cancelled", null, false, false);
+        }
+    }
+
+    // ---------------------------------------------------------------- XLSX
+
+    private static void readXlsx(InputStream in, Projection projection, KeyValueJsonReader.Handler handler)
+            throws Exception {
+        OPCPackage pkg = OPCPackage.open(in);
+        try {
+            SheetSectionHandler open = SheetSectionHandler.readWorkbook(pkg, projection, handler,
+                    new ShardedWorkbookWriter.Continuations(), null);
+            if (open != null) {
+                open.finish();
+            }
+        } finally {
+            // read-only use: revert releases the package without saving
+            pkg.revert();
+        }
+    }
+
+    // ---------------------------------------------------------------- CSV
+
+    private static void readCsv(InputStream in, String sectionName, KeyValueJsonReader.Handler handler)
+            throws IOException {
+        Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        CSVParser parser = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build().parse(reader);
+        List<String> headers = parser.getHeaderNames();
+
+        handler.startSection(sectionName, true);
+        for (CSVRecord record : parser) {
+            handler.startRow();
+            for (int c = 0; c < headers.size(); c++) {
+                handler.cell(headers.get(c), c < record.size() ? record.get(c) : "");
+            }
+            handler.endRow();
+        }
+        handler.endSection();
+    }
+}
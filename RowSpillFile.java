@@ -0,0 +1,146 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Temporary file of sparse rows, used when rows have to be kept until the full set of columns is
+ * known (e.g. a CSV header) but may not fit in memory. Each row is stored as its number of cells
+ * followed by (column index, UTF-8 value) pairs, so rows written before a column existed simply
+ * don't mention it.
+ *
+ * Usage: append() every row, then open a Cursor to read them back in the same order; close()
+ * deletes the file.
+ */
+public class RowSpillFile implements Closeable {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final File file;
+    private DataOutputStream out;
+    private long rowCount;
+
+    public RowSpillFile() throws IOException {
+        this.file = File.createTempFile("rows", ".spill");
+        try {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends one row made of the first count (column, value) pairs.
+     */
+    public void append(int[] columns, String[] values, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(columns[i]);
+            byte[] bytes = values[i].getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        rowCount++;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Finishes writing and returns a cursor over all rows, in the order they were appended.
+     */
+    public Cursor openCursor() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        return new Cursor(new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        } finally {
+            // Only a file that can't be deleted now (e.g. a cursor still has it open on Windows) is
+            // left for the JVM's exit; registering every file would keep its name until then
+            if (!file.delete() && file.exists()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Reads the spilled rows back one at a time.
+     */
+    public static class Cursor implements Closeable {
+        private final DataInputStream in;
+        private int[] columns = new int[16];
+        private String[] values = new String[16];
+        private int size;
+        private byte[] buffer = new byte[256];
+
+        Cursor(DataInputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Moves to the next row; false when there are no more rows.
+         */
+        public boolean next() throws IOException {
+            int count;
+            try {
+                count = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            if (count > columns.length) {
+                columns = new int[count];
+                values = new String[count];
+            }
+            for (int i = 0; i < count; i++) {
+                columns[i] = in.readInt();
+                int length = in.readInt();
+                if (length > buffer.length) {
+                    buffer = new byte[Math.max(length, buffer.length * 2)];
+                }
+                in.readFully(buffer, 0, length);
+                values[i] = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            }
+            size = count;
+            return true;
+        }
+
+        /** Number of cells in the current row. */
+        public int size() {
+            return size;
+        }
+
+        public int column(int i) {
+            return columns[i];
+        }
+
+        public String value(int i) {
+            return values[i];
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.example;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * The writers as java.util.concurrent.Flow subscribers of RowEvents (see RowPublishers), each
+ * writing to an OutputStream:
+ *
+ *   json()   the normalized benefitRequest JSON, streamed row by row
+ *   xlsx()   a workbook with a sheet per section, set up like JsonToExcelBatch's
+ *   csv()    one section as CSV
+ *
+ * A section's header is only complete once the section ends, so xlsx() and csv() hold the current
+ * section in memory (as a KeyValueTable.Section) and write it out at its end. xlsx() also holds
+ * the workbook in memory until the end, so nothing goes to temporary files, unless it is asked
+ * for a streaming workbook. The output stream is flushed but not closed.
+ *
+ * Demand is requested REQUEST_BATCH events at a time and topped up as they are written, so the
+ * publisher never runs further ahead than that. getResult() completes with the number of rows
+ * written, or with the error of the publisher or the writer (which then cancels its subscription).
+ */
+public class RowSubscribers {
+
+    // Events requested at a time; more are requested once half of them are written
+    private static final int REQUEST_BATCH = 256;
+
+    private RowSubscribers() {
+    }
+
+    public static SinkSubscriber json(OutputStream out) {
+        return new SinkSubscriber(new RequestJsonSink(newWriter(out)));
+    }
+
+    /**
+     * The workbook is built in memory (XSSFWorkbook) and written to out at the end.
+     */
+    public static SinkSubscriber xlsx(OutputStream out) {
+        return xlsx(out, false);
+    }
+
+    /**
+     * With streaming, the workbook is JsonToExcelBatch's streaming one (with STREAMING_OUTPUT): only
+     * a window of rows per sheet stays in memory, the others wait in SXSSF's temp files until the
+     * workbook is written. Worth it for outputs too large to hold as a whole.
+     */
+    public static SinkSubscriber xlsx(OutputStream out, boolean streaming) {
+        return new SinkSubscriber(new XlsxSink(unclosed(out), streaming));
+    }
+
+    /**
+     * Writes the section named sectionName, or the first section with columns when it is null.
+     * Fails if there is no such section.
+     */
+    public static SinkSubscriber csv(OutputStream out, String sectionName) {
+        return new SinkSubscriber(new CsvSink(out, sectionName));
+    }
+
+    /**
+     * Any other sink, e.g. one of FanOutPipeline's.
+     */
+    public static SinkSubscriber to(FanOutPipeline.Sink sink) {
+        return new SinkSubscriber(sink);
+    }
+
+    /**
+     * Replays the events into a sink on the delivering thread; finishes it on completion and
+     * aborts it on error or cancellation.
+     */
+    public static class SinkSubscriber implements Flow.Subscriber<RowEvent> {
+        private final FanOutPipeline.Sink sink;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+        private int outstanding;
+        private long rows;
+        private boolean done;
+
+        SinkSubscriber(FanOutPipeline.Sink sink) {
+            this.sink = Objects.requireNonNull(sink);
+        }
+
+        /**
+         * Completes with the number of rows written once the output is complete.
+         */
+        public CompletableFuture<Long> getResult() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            outstanding = REQUEST_BATCH;
+            subscription.request(REQUEST_BATCH);
+        }
+
+        @Override
+        public void onNext(RowEvent event) {
+            if (done) return;
+            try {
+                event.deliver(sink);
+                if (event.getKind() == RowEvent.Kind.ROW) {
+                    rows++;
+                }
+            } catch (Exception e) {
+                subscription.cancel();
+                fail(e);
+                return;
+            }
+            if (--outstanding <= REQUEST_BATCH / 2) {
+                subscription.request(REQUEST_BATCH - outstanding);
+                outstanding = REQUEST_BATCH;
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            if (done) return;
+            fail(error);
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) return;
+            done = true;
+            try {
+                sink.finish();
+                result.complete(rows);
+            } catch (Exception e) {
+                sink.abort();
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void fail(Throwable error) {
+            done = true;
+            sink.abort();
+            result.completeExceptionally(error);
+        }
+    }
+
+    // ---------------------------------------------------------------- sinks
+
+    /**
+     * Collects each section in memory and hands it to writeSection() once it is complete.
+     * Single-object sections without rows and sections without columns are skipped, like the
+     * converters do.
+     */
+    private abstract static class SectionSink implements FanOutPipeline.Sink {
+        private final KeyValueTable table = new KeyValueTable();
+        private KeyValueTable.Section section;
+
+        @Override
+        public void startSection(String name, boolean array) {
+            section = table.newSection(name, array);
+        }
+
+        @Override
+        public void startRow() {
+            section.addRow();
+        }
+
+        @Override
+        public void cell(String attribute, String value) {
+            section.put(attribute, value);
+        }
+
+        @Override
+        public void endRow() {
+        }
+
+        @Override
+        public void endSection() throws IOException {
+            KeyValueTable.Section complete = section;
+            section = null;
+            if ((complete.isArray() || complete.getRowCount() > 0) && complete.getColumnCount() > 0) {
+                writeSection(complete);
+            }
+        }
+
+        abstract void writeSection(KeyValueTable.Section section) throws IOException;
+    }
+
+    private static class XlsxSink extends SectionSink {
+        private final OutputStream out;
+        private final ShardedWorkbookWriter writer;
+
+        XlsxSink(OutputStream out, boolean streaming) {
+            this.out = out;
+            this.writer = JsonToExcelBatch.newWorkbookWriter(out, streaming);
+        }
+
+        @Override
+        void writeSection(KeyValueTable.Section section) throws IOException {
+            KeyValueTableIO.writeSection(writer, section);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            try {
+                writer.finish();
+                out.flush();
+            } finally {
+                writer.close();
+            }
+        }
+
+        @Override
+        public void abort() {
+            writer.close();
+        }
+    }
+
+    private static class CsvSink extends SectionSink {
+        private final Writer out;
+        private final String sectionName;
+        private boolean written;
+
+        CsvSink(OutputStream out, String sectionName) {
+            this.out = newWriter(out);
+            this.sectionName = sectionName;
+        }
+
+        @Override
+        void writeSection(KeyValueTable.Section section) throws IOException {
+            if (written || (sectionName != null && !sectionName.equals(section.getName()))) {
+                return;
+            }
+            KeyValueTableIO.writeCsv(section, out);
+            written = true;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.close();
+            if (!written) {
+                throw new IOException(sectionName == null ? "No section with columns found"
+                        : "No section '" + sectionName + "' found");
+            }
+        }
+    }
+
+    private static Writer newWriter(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(unclosed(out), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The stream belongs to the caller: closing our writer only flushes it.
+     */
+    private static OutputStream unclosed(OutputStream out) {
+        return new FilterOutputStream(Objects.requireNonNull(out)) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+}
@@ -0,0 +1,149 @@
+package com.example;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the ConversionMetrics of one batch and writes them as a JSON run summary:
+ * per-file phase times, rows/cells per second and bytes in/out, plus batch totals and peak heap.
+ *
+ * Call begin() before a batch and write() after it. Callers that convert without ever writing a
+ * report (benchmarks, tests) turn recording off, so the files don't pile up.
+ */
+public class RunReport {
+
+    private static final Queue<ConversionMetrics> FILES = new ConcurrentLinkedQueue<>();
+    private static volatile long startMillis = System.currentTimeMillis();
+    private static volatile boolean recording = true;
+
+    private RunReport() {
+    }
+
+    /**
+     * Starts a new batch: forgets earlier files and resets the JVM's heap peak counters.
+     */
+    public static void begin() {
+        FILES.clear();
+        startMillis = System.currentTimeMillis();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Whether finished files are kept for the report (the default) or dropped.
+     */
+    public static void setRecording(boolean enabled) {
+        recording = enabled;
+        if (!enabled) {
+            FILES.clear();
+        }
+    }
+
+    static void record(ConversionMetrics metrics) {
+        if (recording) {
+            FILES.add(metrics);
+        }
+    }
+
+    /**
+     * Writes the summary of everything recorded since begin(), files sorted by name.
+     */
+    public static void write(File reportFile) throws IOException {
+        long endMillis = System.currentTimeMillis();
+        List<ConversionMetrics> files = new ArrayList<>(FILES);
+        files.sort(Comparator.comparing(m -> m.getInput().getName()));
+
+        long rows = 0, cells = 0, bytesIn = 0, bytesOut = 0;
+        int failed = 0;
+
+        try (JsonStreamWriter json = new JsonStreamWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(reportFile), StandardCharsets.UTF_8)), 4)) {
+            json.beginObject();
+            json.name("startedAt").value(Instant.ofEpochMilli(startMillis).toString());
+            json.name("finishedAt").value(Instant.ofEpochMilli(endMillis).toString());
+
+            json.name("files").beginArray();
+            for (ConversionMetrics file : files) {
+                double seconds = file.getTotalNanos() / 1e9;
+                json.beginObject();
+                json.name("input").value(file.getInput().getName());
+                json.name("output").value(file.getOutput() == null ? null : file.getOutput().getName());
+                json.name("success").value(file.getError() == null);
+                if (file.getError() != null) {
+                    json.name("error").value(file.getError().toString());
+                }
+                json.name("totalMillis").value(file.getTotalNanos() / 1_000_000);
+                json.name("phaseMillis").beginObject();
+                for (Map.Entry<String, Long> phase : file.getPhaseNanos().entrySet()) {
+                    json.name(phase.getKey()).value(Math.round(phase.getValue() / 1e3) / 1e3);
+                }
+                json.endObject();
+                json.name("rows").value(file.getRows());
+                json.name("cells").value(file.getCells());
+                json.name("rowsPerSecond").value(perSecond(file.getRows(), seconds));
+                json.name("cellsPerSecond").value(perSecond(file.getCells(), seconds));
+                json.name("bytesIn").value(file.getBytesIn());
+                json.name("bytesOut").value(file.getBytesOut());
+                json.name("peakHeapSampledBytes").value(file.getPeakHeap());
+                json.endObject();
+
+                rows += file.getRows();
+                cells += file.getCells();
+                bytesIn += file.getBytesIn();
+                bytesOut += file.getBytesOut();
+                if (file.getError() != null) failed++;
+            }
+            json.endArray();
+
+            double wallSeconds = (endMillis - startMillis) / 1e3;
+            json.name("totals").beginObject();
+            json.name("files").value(files.size());
+            json.name("failed").value(failed);
+            json.name("wallMillis").value(endMillis - startMillis);
+            json.name("rows").value(rows);
+            json.name("cells").value(cells);
+            json.name("rowsPerSecond").value(perSecond(rows, wallSeconds));
+            json.name("cellsPerSecond").value(perSecond(cells, wallSeconds));
+            json.name("bytesIn").value(bytesIn);
+            json.name("bytesOut").value(bytesOut);
+            json.name("peakHeapBytes").value(peakHeap());
+            json.endObject();
+
+            json.endObject();
+        }
+    }
+
+    private static double perSecond(long count, double seconds) {
+        return seconds <= 0 ? 0 : Math.round(count / seconds * 10) / 10.0;
+    }
+
+    /**
+     * Sum of the heap pools' peaks since begin() (an upper bound, the pools peak at different times).
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers the attribute (column) order of every sheet, keyed by clientCode and sheet name,
+ * in a small JSON file:
+ *
+ *   { "GHAS": { "Copay": [ "CopayChannel", "CopayAmount", ... ], ... }, ... }
+ *
+ * For a (clientCode, sheet) seen before, converters can write the header straight away and
+ * convert rows in one pass instead of collecting the attribute set first. New attributes are
+ * appended by record() and saved for the next run.
+ */
+public class SchemaRegistry {
+
+    private final File file;
+    // clientCode -> sheet name -> attribute order; guarded by "this"
+    private final Map<String, Map<String, List<String>>> schemas = new TreeMap<>();
+    private boolean dirty;
+
+    private SchemaRegistry(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the registry from the file, or starts an empty one if the file doesn't exist yet.
+     */
+    public static SchemaRegistry load(File file) throws IOException {
+        SchemaRegistry registry = new SchemaRegistry(file);
+        if (file.exists()) {
+            JSONObject root = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            for (String clientCode : root.keySet()) {
+                JSONObject sheets = root.getJSONObject(clientCode);
+                for (String sheetName : sheets.keySet()) {
+                    JSONArray attributes = sheets.getJSONArray(sheetName);
+                    List<String> order = new ArrayList<>();
+                    for (int i = 0; i < attributes.length(); i++) {
+                        order.add(attributes.getString(i));
+                    }
+                    registry.schemas.computeIfAbsent(clientCode, k -> new TreeMap<>()).put(sheetName, order);
+                }
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Known attribute order of the sheet, or an empty list if it has never been recorded.
+     */
+    public synchronized List<String> lookup(String clientCode, String sheetName) {
+        Map<String, List<String>> sheets = schemas.get(clientCode);
+        List<String> order = (sheets == null) ? null : sheets.get(sheetName);
+        return (order == null) ? Collections.emptyList() : new ArrayList<>(order);
+    }
+
+    /**
+     * Widens the known schema with any attributes it doesn't contain yet (appended in the given order).
+     */
+    public synchronized void record(String clientCode, String sheetName, List<String> attributes) {
+        List<String> order = schemas.computeIfAbsent(clientCode, k -> new TreeMap<>())
+                .computeIfAbsent(sheetName, k -> new ArrayList<>());
+        for (String attribute : attributes) {
+            if (!order.contains(attribute)) {
+                order.add(attribute);
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Writes the registry if anything changed, via a temp file and an atomic rename.
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) return;
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (JsonStreamWriter json = new JsonStreamWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(temp), StandardCharsets.UTF_8)), 4)) {
+            json.beginObject();
+            for (Map.Entry<String, Map<String, List<String>>> client : schemas.entrySet()) {
+                json.name(client.getKey()).beginObject();
+                for (Map.Entry<String, List<String>> sheet : client.getValue().entrySet()) {
+                    json.name(sheet.getKey()).beginArray();
+                    for (String attribute : sheet.getValue()) {
+                        json.value(attribute);
+                    }
+                    json.endArray();
+                }
+                json.endObject();
+            }
+            json.endObject();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+}
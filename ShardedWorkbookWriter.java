@@ -0,0 +1,440 @@
+package com.example;
+
+import org.apache.poi.ooxml.POIXMLDocument;
+import org.apache.poi.ooxml.POIXMLProperties;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.xmlbeans.XmlException;
+import org.openxmlformats.schemas.officeDocument.x2006.customProperties.CTProperty;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Writes sheets row by row and splits them wherever Excel's limits (or our own) require:
+ *
+ *   - a sheet holds at most maxSheetRows data rows (by default Excel's 1,048,576 rows minus the
+ *     header); the rest continues on sheets named "Copay#2", "Copay#3", ... with the same header
+ *   - a workbook is written out once it holds maxWorkbookRows rows or maxWorkbookChars characters of
+ *     cell text, and writing continues in target.part2.xlsx, target.part3.xlsx, ...
+ *
+ * Only the current workbook is open, so this stays as streaming as the workbooks it is given.
+ * Written to an OutputStream instead of a file, everything goes into one workbook: sheets are still
+ * split, workbooks are not.
+ * A request that fits is written exactly as before: one file, sheets named after their sections.
+ * {@link Continuations} and {@link #partFiles} let the readers join the shards back together. A
+ * workbook with shard sheets lists them in its custom document property "ShardSheets", so a section
+ * that is merely named like a shard ("Copay#2" after "Copay") stays a section of its own.
+ *
+ * Usage: startSheet(), addRow() per row, endSheet(), ... then finish(); close() discards whatever
+ * was not finished. addColumn() widens a sheet's header while it can still be changed.
+ */
+public class ShardedWorkbookWriter implements Closeable {
+
+    /** Data rows per sheet allowed by Excel (1,048,576 rows, one of them the header). */
+    public static final int MAX_SHEET_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows() - 1;
+
+    private static final int MAX_SHEET_NAME = 31;
+    private static final String SHEET_SHARD = "#";
+    // Custom document property listing a workbook's shard sheets, separated by a character
+    // sheet names can't contain
+    private static final String SHARD_SHEETS_PROPERTY = "ShardSheets";
+    private static final String SHARD_SHEETS_SEPARATOR = "/";
+    private static final String PART = ".part";
+    private static final Pattern PART_FILE = Pattern.compile("(?i).+\\.part([2-9]|[1-9][0-9]+)\\.xlsx");
+
+    // Rough sheet XML around each cell's text and each row, to estimate a workbook's uncompressed
+    // size for XlsxOutput before it is written
+    private static final int CELL_XML_BYTES = 48;
+    private static final int ROW_XML_BYTES = 24;
+
+    private final File target;
+    private final OutputStream out;
+    private final Supplier<Workbook> workbooks;
+    private final Function<Workbook, CellStyle> headerStyles;
+    private final ColumnWidths.Strategy widthStrategy;
+    private final XlsxOutput.Compression compression;
+    private final boolean parallelZip;
+    private final ConversionMetrics metrics;
+
+    private int maxSheetRows = MAX_SHEET_ROWS;
+    private long maxWorkbookRows = Long.MAX_VALUE;
+    private long maxWorkbookChars = Long.MAX_VALUE;
+
+    private final List<File> written = new ArrayList<>();
+    private final List<String> workbookShards = new ArrayList<>();
+    private Workbook workbook;
+    private CellStyle headerStyle;
+    private int workbookSheets;
+    private long workbookRows;
+    private long workbookCells;
+    private long workbookChars;
+
+    // The sheet being written: its section name, header, shard number and current shard
+    private String sheetName;
+    private List<String> header;
+    private int shard;
+    private Sheet sheet;
+    private ColumnWidths widths;
+    private int sheetRows;
+
+    /**
+     * @param target       the first (usually only) workbook; later parts are named after it
+     * @param workbooks    creates each workbook (streaming or in-memory)
+     * @param headerStyles creates the header style of each workbook
+     * @param metrics      times the autosize and write phases; may be null
+     */
+    public ShardedWorkbookWriter(File target, Supplier<Workbook> workbooks, Function<Workbook, CellStyle> headerStyles,
+                                 ColumnWidths.Strategy widthStrategy, XlsxOutput.Compression compression,
+                                 boolean parallelZip, ConversionMetrics metrics) {
+        this(target, null, workbooks, headerStyles, widthStrategy, compression, parallelZip, metrics);
+    }
+
+    /**
+     * Writes a single workbook to out (which is not closed) when finish() is called.
+     */
+    public ShardedWorkbookWriter(OutputStream out, Supplier<Workbook> workbooks, Function<Workbook, CellStyle> headerStyles,
+                                 ColumnWidths.Strategy widthStrategy, XlsxOutput.Compression compression,
+                                 ConversionMetrics metrics) {
+        this(null, out, workbooks, headerStyles, widthStrategy, compression, false, metrics);
+    }
+
+    private ShardedWorkbookWriter(File target, OutputStream out, Supplier<Workbook> workbooks,
+                                  Function<Workbook, CellStyle> headerStyles, ColumnWidths.Strategy widthStrategy,
+                                  XlsxOutput.Compression compression, boolean parallelZip, ConversionMetrics metrics) {
+        this.target = target;
+        this.out = out;
+        this.workbooks = workbooks;
+        this.headerStyles = headerStyles;
+        this.widthStrategy = widthStrategy;
+        this.compression = compression;
+        this.parallelZip = parallelZip;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Lowers the limits; maxSheetRows is capped at MAX_SHEET_ROWS.
+     */
+    public void setLimits(int maxSheetRows, long maxWorkbookRows, long maxWorkbookChars) {
+        this.maxSheetRows = Math.max(1, Math.min(MAX_SHEET_ROWS, maxSheetRows));
+        this.maxWorkbookRows = Math.max(1, maxWorkbookRows);
+        this.maxWorkbookChars = Math.max(1, maxWorkbookChars);
+    }
+
+    /**
+     * Starts a sheet named name with the given header row. The header is repeated on every shard.
+     */
+    public void startSheet(String name, List<String> header) throws IOException {
+        endSheet();
+        if (workbookFull()) {
+            writeWorkbook();
+        }
+        this.sheetName = name;
+        this.header = new ArrayList<>(header);
+        this.shard = 1;
+        openShard();
+    }
+
+    /**
+     * Adds a data row; values[c] goes under header column c, null leaves the cell out.
+     */
+    public void addRow(String[] values) throws IOException {
+        if (sheetRows == maxSheetRows || workbookFull()) {
+            closeShard();
+            if (workbookFull()) {
+                writeWorkbook();
+            }
+            shard++;
+            openShard();
+        }
+
+        Row row = sheet.createRow(++sheetRows);
+        int columns = Math.min(values.length, header.size());
+        for (int c = 0; c < columns; c++) {
+            String value = values[c];
+            if (value != null) {
+                row.createCell(c).setCellValue(value);
+                widths.track(c, value);
+                workbookChars += value.length();
+                workbookCells++;
+            }
+        }
+        workbookRows++;
+    }
+
+    /**
+     * Appends a column to the current sheet's header, if that can still be done: on the sheet's
+     * first shard, while its header row is in memory (a streaming workbook flushes it after
+     * the first rows). Returns false otherwise.
+     */
+    public boolean addColumn(String name) {
+        Row headerRow = (sheet == null || shard > 1) ? null : sheet.getRow(0);
+        if (headerRow == null) {
+            return false;
+        }
+        int c = header.size();
+        Cell cell = headerRow.createCell(c);
+        cell.setCellValue(name);
+        cell.setCellStyle(headerStyle);
+        widths.trackHeader(c, name);
+        header.add(name);
+        return true;
+    }
+
+    /**
+     * Completes the current sheet (sizing its columns). Called by startSheet() and finish() too.
+     */
+    public void endSheet() {
+        if (sheet != null) {
+            closeShard();
+        }
+        sheetName = null;
+        header = null;
+    }
+
+    /**
+     * Writes the last workbook and removes parts a previous, larger run left behind.
+     * Returns every file written, in order (none when writing to a stream).
+     */
+    public List<File> finish() throws IOException {
+        endSheet();
+        if (workbook == null && written.isEmpty()) {
+            openWorkbook();
+        }
+        if (workbook != null) {
+            writeWorkbook();
+        }
+        if (target == null) {
+            return new ArrayList<>(written);
+        }
+        for (int part = written.size() + 1; ; part++) {
+            if (!Files.deleteIfExists(partFile(target, part).toPath())) {
+                break;
+            }
+        }
+        return new ArrayList<>(written);
+    }
+
+    @Override
+    public void close() {
+        JsonToExcelBatch.closeWorkbook(workbook);
+        workbook = null;
+        sheet = null;
+    }
+
+    private boolean workbookFull() {
+        return out == null && workbookSheets > 0 && (workbookRows >= maxWorkbookRows || workbookChars >= maxWorkbookChars);
+    }
+
+    private void openShard() {
+        if (workbook == null) {
+            openWorkbook();
+        }
+        sheet = workbook.createSheet(shardName(sheetName, shard));
+        workbookSheets++;
+        if (shard > 1) {
+            workbookShards.add(sheet.getSheetName());
+        }
+        widths = new ColumnWidths(widthStrategy);
+        widths.prepare(sheet);
+        sheetRows = 0;
+
+        Row headerRow = sheet.createRow(0);
+        for (int c = 0; c < header.size(); c++) {
+            Cell cell = headerRow.createCell(c);
+            cell.setCellValue(header.get(c));
+            cell.setCellStyle(headerStyle);
+            widths.trackHeader(c, header.get(c));
+        }
+    }
+
+    private void closeShard() {
+        time("autosize", () -> widths.apply(sheet, header.size()));
+        sheet = null;
+        widths = null;
+    }
+
+    private void openWorkbook() {
+        workbook = workbooks.get();
+        headerStyle = headerStyles.apply(workbook);
+        workbookSheets = 0;
+        workbookShards.clear();
+        workbookRows = 0;
+        workbookCells = 0;
+        workbookChars = 0;
+    }
+
+    private void writeWorkbook() throws IOException {
+        recordShards();
+        if (out != null) {
+            try {
+                time("write", () -> XlsxOutput.write(workbook, out, compression));
+            } finally {
+                close();
+            }
+            return;
+        }
+        File file = partFile(target, written.size() + 1);
+        try {
+            long xmlBytes = workbookChars + workbookCells * CELL_XML_BYTES + workbookRows * ROW_XML_BYTES;
+            time("write", () -> XlsxOutput.write(workbook, file, compression, parallelZip, xmlBytes));
+        } finally {
+            close();
+        }
+        written.add(file);
+    }
+
+    /**
+     * Lists the workbook's shard sheets in its custom properties. A workbook without shards is
+     * written as before, without the property.
+     */
+    private void recordShards() {
+        if (workbookShards.isEmpty()) {
+            return;
+        }
+        Workbook document = (workbook instanceof SXSSFWorkbook) ? ((SXSSFWorkbook) workbook).getXSSFWorkbook() : workbook;
+        if (document instanceof POIXMLDocument) {
+            ((POIXMLDocument) document).getProperties().getCustomProperties()
+                    .addProperty(SHARD_SHEETS_PROPERTY, String.join(SHARD_SHEETS_SEPARATOR, workbookShards));
+        }
+    }
+
+    private <E extends Exception> void time(String name, ConversionMetrics.Task<E> task) throws E {
+        if (metrics == null) {
+            task.run();
+        } else {
+            metrics.time(name, task);
+        }
+    }
+
+    // ---------------------------------------------------------------- shard names
+
+    /**
+     * Name of a sheet's n-th shard: the name itself for the first one, then "name#2", "name#3", ...
+     * (the name is shortened if the suffix would exceed Excel's 31 characters).
+     */
+    public static String shardName(String name, int shard) {
+        if (shard <= 1) {
+            return name;
+        }
+        String suffix = SHEET_SHARD + shard;
+        if (name.length() + suffix.length() > MAX_SHEET_NAME) {
+            name = name.substring(0, Math.max(0, MAX_SHEET_NAME - suffix.length()));
+        }
+        return name + suffix;
+    }
+
+    /**
+     * The n-th workbook of target: target itself, then base.part2.xlsx, base.part3.xlsx, ...
+     */
+    public static File partFile(File target, int part) {
+        if (part <= 1) {
+            return target;
+        }
+        String name = target.getName();
+        int dot = name.lastIndexOf('.');
+        String base = (dot < 0) ? name : name.substring(0, dot);
+        String extension = (dot < 0) ? "" : name.substring(dot);
+        return new File(target.getAbsoluteFile().getParentFile(), base + PART + part + extension);
+    }
+
+    /**
+     * True for base.part2.xlsx, base.part3.xlsx, ...: files that are read together with base.xlsx
+     * rather than on their own.
+     */
+    public static boolean isPartFile(String fileName) {
+        return PART_FILE.matcher(fileName).matches();
+    }
+
+    /**
+     * The first workbook followed by all of its parts that exist, in order.
+     */
+    public static List<File> partFiles(File first) {
+        List<File> parts = new ArrayList<>();
+        parts.add(first);
+        for (int part = 2; ; part++) {
+            File file = partFile(first, part);
+            if (!file.isFile()) {
+                return parts;
+            }
+            parts.add(file);
+        }
+    }
+
+    /**
+     * Recognizes shard sheets while reading sheets in order (across parts, too): next() is true
+     * when a sheet is the next shard of the sheet before it, i.e. its rows belong to the same section.
+     * Only sheets the workbook lists as shards qualify, so startWorkbook() has to be called with
+     * each workbook (or part) before its sheets.
+     */
+    public static class Continuations {
+        private Set<String> shardSheets = Collections.emptySet();
+        private String name;
+        private int shard;
+
+        /**
+         * Reads the shard sheets of the package whose sheets come next.
+         */
+        public void startWorkbook(OPCPackage pkg) throws IOException {
+            try {
+                startWorkbook(new POIXMLProperties(pkg));
+            } catch (OpenXML4JException | XmlException e) {
+                throw new IOException("Cannot read the document properties: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Same as above, for a workbook read into memory.
+         */
+        public void startWorkbook(Workbook workbook) {
+            if (workbook instanceof POIXMLDocument) {
+                startWorkbook(((POIXMLDocument) workbook).getProperties());
+            } else {
+                shardSheets = Collections.emptySet();
+            }
+        }
+
+        private void startWorkbook(POIXMLProperties properties) {
+            CTProperty property = properties.getCustomProperties().getProperty(SHARD_SHEETS_PROPERTY);
+            shardSheets = (property == null || !property.isSetLpwstr())
+                    ? Collections.emptySet()
+                    : new HashSet<>(Arrays.asList(property.getLpwstr().split(SHARD_SHEETS_SEPARATOR)));
+        }
+
+        public boolean next(String sheetName) {
+            if (name != null && shardSheets.contains(sheetName) && sheetName.equals(shardName(name, shard + 1))) {
+                shard++;
+                return true;
+            }
+            name = sheetName;
+            shard = 1;
+            return false;
+        }
+
+        /**
+         * Name of the section the last sheet belongs to (its first shard's name).
+         */
+        public String getSectionName() {
+            return name;
+        }
+    }
+}
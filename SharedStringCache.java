@@ -0,0 +1,120 @@
+package com.example;
+
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.xssf.model.SharedStrings;
+
+import java.util.Arrays;
+
+/**
+ * Read side of the workbook's shared-strings table for the SAX (event) readers.
+ *
+ * ReadOnlySharedStringsTable builds a new XSSFRichTextString, and from it a new String, every time
+ * a cell refers to an entry, so a value repeated a million times is allocated a million times.
+ * This wrapper resolves each entry once, on first use, and from then on returns the same
+ * instance: repeated cells cost nothing, and since the table holds each distinct value once,
+ * every reader downstream sees one String per distinct value.
+ *
+ * Formatting runs are dropped; the converters only use the text. Safe to share between threads
+ * (two threads resolving the same entry at once just store equal instances).
+ */
+public class SharedStringCache implements SharedStrings {
+
+    private final SharedStrings strings;
+    // Grows on demand: uniqueCount is only a hint (some writers leave it out)
+    private volatile RichTextString[] entries;
+
+    public SharedStringCache(SharedStrings strings) {
+        this.strings = strings;
+        this.entries = new RichTextString[Math.max(16, strings.getUniqueCount())];
+    }
+
+    @Override
+    public RichTextString getItemAt(int idx) {
+        RichTextString[] current = entries;
+        RichTextString entry = (idx >= 0 && idx < current.length) ? current[idx] : null;
+        if (entry == null) {
+            entry = new PlainText(strings.getItemAt(idx).getString());
+            store(idx, entry);
+        }
+        return entry;
+    }
+
+    private synchronized void store(int idx, RichTextString entry) {
+        if (idx >= entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(idx + 1, entries.length * 2));
+        }
+        entries[idx] = entry;
+    }
+
+    @Override
+    public int getCount() {
+        return strings.getCount();
+    }
+
+    @Override
+    public int getUniqueCount() {
+        return strings.getUniqueCount();
+    }
+
+    /**
+     * Immutable text-only entry; XSSFSheetXMLHandler only calls toString() on it.
+     */
+    private static final class PlainText implements RichTextString {
+        private final String text;
+
+        PlainText(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String getString() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public int numFormattingRuns() {
+            return 0;
+        }
+
+        @Override
+        public int getIndexOfFormattingRun(int index) {
+            return -1;
+        }
+
+        @Override
+        public void applyFont(int startIndex, int endIndex, short fontIndex) {
+            throw new UnsupportedOperationException("Shared string cache entries are read-only");
+        }
+
+        @Override
+        public void applyFont(int startIndex, int endIndex, Font font) {
+            throw new UnsupportedOperationException("Shared string cache entries are read-only");
+        }
+
+        @Override
+        public void applyFont(Font font) {
+            throw new UnsupportedOperationException("Shared string cache entries are read-only");
+        }
+
+        @Override
+        public void applyFont(short fontIndex) {
+            throw new UnsupportedOperationException("Shared string cache entries are read-only");
+        }
+
+        @Override
+        public void clearFormatting() {
+            throw new UnsupportedOperationException("Shared string cache entries are read-only");
+        }
+    }
+}
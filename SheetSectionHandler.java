@@ -0,0 +1,261 @@
+package com.example;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the cells the SAX parser reports for one sheet (and the shards that continue it, "Copay#2",
+ * ...) into section events for a {@link KeyValueJsonReader.Handler}, the way every XLSX reader of
+ * this project reads a sheet: the first row is the header, a sheet with exactly one data row is a
+ * single object and a sheet with more rows is an array, and sheets without data rows are left
+ * out. Missing cells of a data row become "". Only the first data row is held back until the
+ * second one shows which of the two the section is.
+ *
+ * Columns with an empty header, or whose attribute the projection leaves out, are dropped once the
+ * header is known; keepsColumn() tells a Projection.CellFilter which cells aren't needed at all.
+ * IOExceptions of the handler are thrown as UncheckedIOException (SheetContentsHandler can't
+ * throw them).
+ *
+ * readXlsx(), readWorkbook() and readSheets() are the loop around it that every XLSX reader
+ * shares, from a whole split workbook down to the sheets of one package.
+ */
+public class SheetSectionHandler implements SheetContentsHandler {
+    private final String sectionName;
+    private final Projection projection;
+    private final KeyValueJsonReader.Handler handler;
+
+    private List<String> headers;
+    private boolean[] keep;
+    private List<String> currentRow;
+    private int nextColumn;
+    private String[] pendingRow;
+    private int dataRowCount;
+
+    public SheetSectionHandler(String sectionName, Projection projection, KeyValueJsonReader.Handler handler) {
+        this.sectionName = sectionName;
+        this.projection = projection;
+        this.handler = handler;
+    }
+
+    /**
+     * The handler for a workbook's next sheet: open itself if the sheet is open's next shard (continued
+     * and sectionName as ShardedWorkbookWriter.Continuations found them), otherwise a new one,
+     * after finishing open.
+     */
+    public static SheetSectionHandler forSheet(SheetSectionHandler open, String sheetName, boolean continued,
+                                               String sectionName, Projection projection,
+                                               KeyValueJsonReader.Handler handler) throws IOException {
+        if (continued && open != null && open.sectionName.equals(sectionName)) {
+            open.continueSheet();
+            return open;
+        }
+        if (open != null) {
+            open.finish();
+        }
+        return new SheetSectionHandler(sheetName, projection, handler);
+    }
+
+    /**
+     * Reads a workbook written by ShardedWorkbookWriter, with its part files, into handler: a
+     * section per sheet, shard sheets and parts joined back into their sections, only the sheets
+     * and columns the projection selects.
+     */
+    public static void readXlsx(File file, Projection projection, KeyValueJsonReader.Handler handler)
+            throws IOException {
+        ShardedWorkbookWriter.Continuations continuations = new ShardedWorkbookWriter.Continuations();
+        SheetSectionHandler open = null;
+        for (File part : ShardedWorkbookWriter.partFiles(file)) {
+            OPCPackage pkg = null;
+            try {
+                pkg = OPCPackage.open(part, PackageAccess.READ);
+                open = readWorkbook(pkg, projection, handler, continuations, open);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Cannot read " + part.getName() + ": " + e.getMessage(), e);
+            } finally {
+                if (pkg != null) {
+                    // read-only package: revert closes it without trying to save
+                    pkg.revert();
+                }
+            }
+        }
+        if (open != null) {
+            open.finish();
+        }
+    }
+
+    /**
+     * Reads the sheets of one open package (a workbook or one of its parts). The last sheet's
+     * handler is left open and returned, as the next part may continue its section; open is the
+     * one left by the previous part, continuations the state carried across parts.
+     */
+    public static SheetSectionHandler readWorkbook(OPCPackage pkg, Projection projection,
+                                                   KeyValueJsonReader.Handler handler,
+                                                   ShardedWorkbookWriter.Continuations continuations,
+                                                   SheetSectionHandler open) throws Exception {
+        continuations.startWorkbook(pkg);
+        XSSFReader reader = new XSSFReader(pkg);
+        // Each shared string is resolved once, not once per cell that uses it
+        SharedStrings sharedStrings = new SharedStringCache(new ReadOnlySharedStringsTable(pkg));
+        StylesTable styles = reader.getStylesTable();
+        return readSheets((XSSFReader.SheetIterator) reader.getSheetsData(), styles, sharedStrings,
+                projection, handler, continuations, open);
+    }
+
+    /**
+     * readWorkbook's loop over the sheets, for callers that open the package's parts themselves
+     * (and have started continuations on it). Sheets the projection leaves out are closed again
+     * without being read.
+     */
+    public static SheetSectionHandler readSheets(XSSFReader.SheetIterator sheets, StylesTable styles,
+                                                 SharedStrings sharedStrings, Projection projection,
+                                                 KeyValueJsonReader.Handler handler,
+                                                 ShardedWorkbookWriter.Continuations continuations,
+                                                 SheetSectionHandler open) throws Exception {
+        DataFormatter formatter = new DataFormatter();
+        while (sheets.hasNext()) {
+            try (InputStream sheetStream = sheets.next()) {
+                String sheetName = sheets.getSheetName();
+                boolean continued = continuations.next(sheetName);
+                if (!projection.includesSheet(continuations.getSectionName())) {
+                    continue;
+                }
+                open = forSheet(open, sheetName, continued, continuations.getSectionName(), projection, handler);
+                XMLReader parser = XMLHelper.newXMLReader();
+                if (!projection.isAll()) {
+                    parser = new Projection.CellFilter(parser, open::keepsColumn);
+                }
+                parser.setContentHandler(new XSSFSheetXMLHandler(styles, sharedStrings, open, formatter, false));
+                try {
+                    parser.parse(new InputSource(sheetStream));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Whether a column's cells are needed: all of them for the header row, then only the
+     * selected attributes.
+     */
+    public boolean keepsColumn(int col) {
+        return headers == null || (col < keep.length && keep[col]);
+    }
+
+    @Override
+    public void startRow(int rowNum) {
+        currentRow = new ArrayList<>();
+        nextColumn = 0;
+    }
+
+    @Override
+    public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+        // Missing cells are skipped by the parser, so position by reference when we have one
+        int col = (cellReference == null) ? nextColumn : new CellReference(cellReference).getCol();
+        cell(col, formattedValue == null ? "" : formattedValue);
+    }
+
+    /**
+     * A cell at a known column, e.g. replayed from cells recorded earlier.
+     */
+    public void cell(int col, String value) {
+        while (currentRow.size() < col) {
+            currentRow.add("");
+        }
+        currentRow.add(value);
+        nextColumn = col + 1;
+    }
+
+    @Override
+    public void endRow(int rowNum) {
+        if (headers == null) {
+            headers = currentRow;
+            keep = new boolean[headers.size()];
+            for (int c = 0; c < keep.length; c++) {
+                String attribute = headers.get(c);
+                keep[c] = !attribute.isEmpty() && projection.includesAttribute(attribute);
+            }
+            return;
+        }
+
+        String[] values = new String[headers.size()];
+        for (int c = 0; c < values.length; c++) {
+            values[c] = (c < currentRow.size()) ? currentRow.get(c) : "";
+        }
+
+        try {
+            if (dataRowCount == 0) {
+                pendingRow = values;
+            } else {
+                if (dataRowCount == 1) {
+                    // second row -> it's an array after all
+                    handler.startSection(sectionName, true);
+                    writeRow(pendingRow);
+                    pendingRow = null;
+                }
+                writeRow(values);
+            }
+            dataRowCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void headerFooter(String text, boolean isHeader, String tagName) {
+        // not used
+    }
+
+    /**
+     * The next shard of this sheet follows: it starts with the header row again, and its data
+     * rows continue this section.
+     */
+    public void continueSheet() {
+        headers = null;
+    }
+
+    /**
+     * Ends the section; a sheet with a single data row is only reported now.
+     */
+    public void finish() throws IOException {
+        if (dataRowCount == 1) {
+            handler.startSection(sectionName, false);
+            writeRow(pendingRow);
+            handler.endSection();
+        } else if (dataRowCount > 1) {
+            handler.endSection();
+        }
+    }
+
+    private void writeRow(String[] values) throws IOException {
+        handler.startRow();
+        for (int c = 0; c < values.length; c++) {
+            if (keep[c]) {
+                handler.cell(headers.get(c), values[c]);
+            }
+        }
+        handler.endRow();
+    }
+}
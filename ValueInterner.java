@@ -0,0 +1,44 @@
+package com.example;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out one canonical String instance per distinct cell value. Request data is very
+ * repetitive (RTL, MAIL, N, ... millions of times), so keeping one instance instead of one per
+ * cell saves most of the heap a table of values would otherwise take, and the garbage collector
+ * has far less to trace.
+ *
+ * Unlike String.intern() this is per conversion (dropped with the table that owns it) and bounded:
+ * values longer than MAX_LENGTH are passed through untouched, since long values are rarely repeated,
+ * and once MAX_ENTRIES distinct values are held new ones are no longer added. Thread-safe.
+ */
+public class ValueInterner {
+
+    private static final int MAX_LENGTH = 64;
+    private static final int MAX_ENTRIES = 1 << 16;
+
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the canonical instance equal to value (value itself the first time it is seen).
+     */
+    public String intern(String value) {
+        if (value == null || value.length() > MAX_LENGTH) {
+            return value;
+        }
+        String canonical = values.get(value);
+        if (canonical != null) {
+            return canonical;
+        }
+        if (values.size() >= MAX_ENTRIES) {
+            return value;
+        }
+        canonical = values.putIfAbsent(value, value);
+        return (canonical == null) ? value : canonical;
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,258 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps running and converts files as soon as they appear in (or change in) the input folder.
+ *
+ * On start-up every existing input is checked against the ConversionManifest, so only files that
+ * changed while the daemon was down are converted again. After that a WatchService reports new and
+ * modified files. Events are collected for SETTLE_MILLIS before converting, and a file is only
+ * picked up once its size stops changing, so half-copied files are not converted. Files whose size
+ * and modification time still match the manifest are skipped before any of that.
+ */
+public class WatchDaemon {
+
+    private static final String MANIFEST_NAME = ".conversion-manifest.properties";
+    private static final String RUN_REPORT = "run-report.json";
+    private static final long SETTLE_MILLIS = 500;
+
+    private final File inputDir;
+    private final File outputDir;
+    private final List<String> inputExtensions;
+    private final String outputExtension;
+    private final BatchExecutor executor;
+    private final FileConverter converter;
+
+    /**
+     * @param inputExtension  e.g. ".json"; matched case-insensitively
+     * @param outputExtension e.g. ".xlsx"; replaces the input extension
+     */
+    public WatchDaemon(File inputDir, File outputDir, String inputExtension, String outputExtension,
+                       BatchExecutor executor, FileConverter converter) {
+        this(inputDir, outputDir, Collections.singletonList(inputExtension), outputExtension, executor, converter);
+    }
+
+    /**
+     * @param inputExtensions e.g. ".json" and ".jsonl", all handed to the same converter
+     */
+    public WatchDaemon(File inputDir, File outputDir, List<String> inputExtensions, String outputExtension,
+                       BatchExecutor executor, FileConverter converter) {
+        this.inputDir = inputDir;
+        this.outputDir = outputDir;
+        this.inputExtensions = new ArrayList<>();
+        for (String extension : inputExtensions) {
+            this.inputExtensions.add(extension.toLowerCase());
+        }
+        this.outputExtension = outputExtension;
+        this.executor = executor;
+        this.converter = converter;
+    }
+
+    /**
+     * Runs until the thread is interrupted.
+     */
+    public void run() throws IOException, InterruptedException {
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+        ConversionManifest manifest = new ConversionManifest(new File(outputDir, MANIFEST_NAME));
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            // Register before the initial scan so nothing that lands in between is missed
+            inputDir.toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            System.out.println("Watching " + inputDir.getAbsolutePath() + " for " + String.join("/", inputExtensions) + " files");
+            convertChanged(listInputs(), manifest);
+
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<File> changed = new LinkedHashSet<>();
+                boolean overflow = false;
+
+                // Gather everything that arrives within the settle period into one batch
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        } else {
+                            File file = inputDir.toPath().resolve((Path) event.context()).toFile();
+                            if (isInput(file)) {
+                                changed.add(file);
+                            }
+                        }
+                    }
+                    if (!key.reset()) {
+                        System.out.println("Input folder is no longer accessible, stopping.");
+                        return;
+                    }
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                // Some events were dropped: fall back to a full scan (the manifest skips unchanged files)
+                convertChanged(overflow ? listInputs() : new ArrayList<>(changed), manifest);
+            }
+        }
+    }
+
+    /**
+     * Converts the files whose content hash differs from the manifest, then records the successes.
+     */
+    private void convertChanged(List<File> candidates, ConversionManifest manifest)
+            throws IOException, InterruptedException {
+        List<File> changed = new ArrayList<>();
+        for (File input : candidates) {
+            // Same size and modification time as when it was converted: no need to wait or hash
+            if (manifest.isUnchanged(input, writtenOutput(input))) {
+                System.out.println("Up to date: " + input.getName());
+                continue;
+            }
+            changed.add(input);
+        }
+
+        List<File> toConvert = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        List<String> stats = new ArrayList<>();
+        boolean touched = false;
+
+        for (File input : waitUntilStable(changed)) {
+            String stat = ConversionManifest.stat(input);
+            String hash = ConversionManifest.contentHash(input);
+            if (manifest.isCurrent(input, hash, writtenOutput(input))) {
+                // Touched but not changed: remember the new time so it isn't hashed again
+                manifest.record(input, hash, stat);
+                touched = true;
+                System.out.println("Up to date: " + input.getName());
+                continue;
+            }
+            toConvert.add(input);
+            hashes.add(hash);
+            stats.add(stat);
+        }
+        if (toConvert.isEmpty()) {
+            if (touched) {
+                manifest.save();
+            }
+            return;
+        }
+
+        RunReport.begin();
+        List<BatchExecutor.Result> results = executor.run(toConvert, this::outputFor, converter);
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).isSuccess()) {
+                manifest.record(toConvert.get(i), hashes.get(i), stats.get(i));
+            }
+        }
+        manifest.save();
+        BatchExecutor.printSummary(results);
+        RunReport.write(new File(outputDir, RUN_REPORT));
+    }
+
+    /**
+     * Waits until the size of every file stays the same for one settle period. All files settle
+     * together, one sleep per round, so a batch costs SETTLE_MILLIS rather than that per file.
+     * Returns the stable files in their original order; files that vanished are left out.
+     */
+    private List<File> waitUntilStable(List<File> files) throws InterruptedException {
+        Map<File, Long> pending = new LinkedHashMap<>();
+        for (File file : files) {
+            if (file.exists()) {
+                pending.put(file, file.length());
+            }
+        }
+        Set<File> stable = new HashSet<>();
+        while (!pending.isEmpty()) {
+            Thread.sleep(SETTLE_MILLIS);
+            for (Iterator<Map.Entry<File, Long>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<File, Long> entry = it.next();
+                File file = entry.getKey();
+                if (!file.exists()) {
+                    it.remove();
+                    continue;
+                }
+                long current = file.length();
+                if (current == entry.getValue()) {
+                    stable.add(file);
+                    it.remove();
+                } else {
+                    entry.setValue(current);
+                }
+            }
+        }
+
+        List<File> result = new ArrayList<>();
+        for (File file : files) {
+            if (stable.contains(file)) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    private List<File> listInputs() {
+        List<File> inputs = new ArrayList<>();
+        File[] files = inputDir.listFiles(this::isInput);
+        if (files != null) {
+            for (File file : files) {
+                inputs.add(file);
+            }
+        }
+        return inputs;
+    }
+
+    private boolean isInput(File file) {
+        // Continuation parts of a split workbook are read with their first part
+        if (!file.isFile() || ShardedWorkbookWriter.isPartFile(file.getName())) {
+            return false;
+        }
+        String name = file.getName().toLowerCase();
+        for (String extension : inputExtensions) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private File outputFor(File input) {
+        return new File(outputDir, baseName(input) + outputExtension);
+    }
+
+    /**
+     * The output that shows the input was converted: outputFor(input), or for an input written as
+     * several files named <base>-<...> (a workbook per JSONL line, a CSV per section) one of those.
+     */
+    private File writtenOutput(File input) {
+        File output = outputFor(input);
+        if (!output.exists()) {
+            String prefix = baseName(input) + "-";
+            File[] parts = outputDir.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(outputExtension));
+            if (parts != null && parts.length > 0) {
+                return parts[0];
+            }
+        }
+        return output;
+    }
+
+    private static String baseName(File input) {
+        return input.getName().replaceFirst("[.][^.]+$", "");
+    }
+}
@@ -0,0 +1,187 @@
+package com.example;
+
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.parallel.FileBasedScatterGatherBackingStore;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+/**
+ * Writes workbooks with a chosen ZIP compression level, optionally deflating the parts of large
+ * workbooks on several threads, and always through a temp file that is renamed into place, so a
+ * half-written .xlsx is never visible under its final name.
+ *
+ * An .xlsx is a ZIP archive, and plain workbook.write() spends most of its time in single-threaded
+ * deflate at the default level. Streaming workbooks created by {@link #newStreamingWorkbook} take
+ * the level directly; POI offers no such hook for in-memory workbooks, so those (and the parallel
+ * mode) go through a repack: the archive is written once and its parts are re-deflated at the
+ * chosen level, one part per thread, with commons-compress's ParallelScatterZipCreator. Parallelism
+ * is per part, so it pays off for workbooks with several large sheets.
+ */
+public class XlsxOutput {
+
+    public enum Compression {
+        STORE(Deflater.NO_COMPRESSION),
+        FAST(Deflater.BEST_SPEED),
+        DEFAULT(Deflater.DEFAULT_COMPRESSION),
+        MAX(Deflater.BEST_COMPRESSION);
+
+        final int level;
+
+        Compression(int level) {
+            this.level = level;
+        }
+    }
+
+    // Below this much uncompressed XML a repack on several threads costs more than it saves
+    private static final long PARALLEL_MIN_BYTES = 16L * 1024 * 1024;
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private XlsxOutput() {
+    }
+
+    /**
+     * Creates a streaming workbook whose archive is deflated at the given level when written.
+     */
+    public static SXSSFWorkbook newStreamingWorkbook(int rowAccessWindow, boolean sharedStrings, Compression compression) {
+        return new LeveledWorkbook(rowAccessWindow, sharedStrings, compression.level);
+    }
+
+    /**
+     * Writes the workbook to target at the given compression. With parallel set, workbooks of at
+     * least PARALLEL_MIN_BYTES are deflated one part per thread; xmlBytes is the caller's estimate of
+     * the uncompressed size, so the choice is made before anything is written. target only appears
+     * once it is complete.
+     */
+    public static void write(Workbook workbook, File target, Compression compression, boolean parallel,
+                             long xmlBytes) throws IOException {
+        File directory = target.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(target.getName(), ".tmp", directory);
+        try {
+            boolean leveled = workbook instanceof LeveledWorkbook;
+            boolean parallelRepack = parallel && PARALLELISM > 1 && compression != Compression.STORE
+                    && xmlBytes >= PARALLEL_MIN_BYTES;
+            if (!parallelRepack && (leveled || compression == Compression.DEFAULT)) {
+                // The workbook's own ZIP writer can do it in one pass
+                writeWorkbook(workbook, temp, leveled ? compression : null);
+            } else {
+                // Write once (without deflate where we can), then re-deflate every part at the chosen level
+                File written = File.createTempFile(target.getName(), ".written", directory);
+                try {
+                    writeWorkbook(workbook, written, leveled ? Compression.STORE : null);
+                    repack(written, temp, compression, parallelRepack ? PARALLELISM : 1);
+                } finally {
+                    Files.deleteIfExists(written.toPath());
+                }
+            }
+            moveIntoPlace(temp, target);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Writes the workbook to a stream in one pass, e.g. as the body of a response. Only streaming
+     * workbooks from newStreamingWorkbook() take the compression level; others are deflated at
+     * POI's default. The stream is not closed.
+     */
+    public static void write(Workbook workbook, OutputStream out, Compression compression) throws IOException {
+        if (workbook instanceof LeveledWorkbook) {
+            ((LeveledWorkbook) workbook).level = compression.level;
+        }
+        workbook.write(out);
+    }
+
+    /**
+     * Writes with the workbook's own ZIP writer; level is only applied to leveled workbooks.
+     */
+    private static void writeWorkbook(Workbook workbook, File file, Compression level) throws IOException {
+        if (level != null) {
+            ((LeveledWorkbook) workbook).level = level.level;
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            workbook.write(out);
+        }
+    }
+
+    /**
+     * Copies every part of source into target, deflated at the given level on up to threads
+     * threads. Part order is kept ([Content_Types].xml stays first).
+     */
+    private static void repack(File source, File target, Compression compression, int threads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (ZipFile zip = new ZipFile(source)) {
+            // ParallelScatterZipCreator shuts the executor down when it is done
+            ParallelScatterZipCreator creator = new ParallelScatterZipCreator(executor,
+                    () -> new FileBasedScatterGatherBackingStore(File.createTempFile("xlsx-part", ".tmp")),
+                    compression.level);
+
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntriesInPhysicalOrder())) {
+                ZipArchiveEntry copy = new ZipArchiveEntry(entry.getName());
+                copy.setMethod(ZipArchiveEntry.DEFLATED);
+                copy.setTime(entry.getTime());
+                creator.addArchiveEntry(copy, () -> {
+                    try {
+                        return zip.getInputStream(entry);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+
+            try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(target)) {
+                creator.writeTo(out);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing " + target.getName(), e);
+        } catch (ExecutionException e) {
+            throw new IOException("Compressing " + target.getName() + " failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void moveIntoPlace(File temp, File target) throws IOException {
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * SXSSFWorkbook that deflates its archive at a chosen level.
+     */
+    private static class LeveledWorkbook extends SXSSFWorkbook {
+        private int level;
+
+        LeveledWorkbook(int rowAccessWindow, boolean sharedStrings, int level) {
+            super(null, rowAccessWindow, true, sharedStrings);
+            this.level = level;
+        }
+
+        @Override
+        protected ZipArchiveOutputStream createArchiveOutputStream(OutputStream out) {
+            ZipArchiveOutputStream zip = super.createArchiveOutputStream(out);
+            zip.setLevel(level);
+            return zip;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Writes synthetic request files for the benchmarks.
+ *
+ * benefitRequest files have one single-object section ("GeneralPlanDetails") plus (sections - 1)
+ * array sections ("Section1", "Section2", ...) with rowsPerArray elements each. Every row has
+ * attributesPerRow attributes whose values are valueLength characters long. Values are drawn from
+ * a small vocabulary per attribute, like the real data (RTL, MAIL, N, ...).
+ *
+ * keyValue files are the flat structure read by requestJSONtoCSV.
+ */
+public class BenefitRequestGenerator {
+
+    // Distinct values per attribute; real payloads are highly repetitive
+    private static final int VOCABULARY_SIZE = 16;
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private final int sections;
+    private final int rowsPerArray;
+    private final int attributesPerRow;
+    private final String[][] vocabulary;
+    private final Random random = new Random(42);
+
+    public BenefitRequestGenerator(int sections, int rowsPerArray, int attributesPerRow, int valueLength) {
+        this.sections = sections;
+        this.rowsPerArray = rowsPerArray;
+        this.attributesPerRow = attributesPerRow;
+
+        this.vocabulary = new String[attributesPerRow][VOCABULARY_SIZE];
+        for (int a = 0; a < attributesPerRow; a++) {
+            for (int v = 0; v < VOCABULARY_SIZE; v++) {
+                vocabulary[a][v] = randomValue(valueLength);
+            }
+        }
+    }
+
+    public void writeBenefitRequest(File file) throws IOException {
+        try (JsonStreamWriter json = open(file)) {
+            json.beginObject().name("benefitRequest").beginObject();
+            json.name("transactionID").value("999999");
+            json.name("clientCode").value("GHAS");
+            json.name("data").nullValue();
+            json.name("dataSet").beginObject().name("CVS").beginObject();
+
+            json.name("GeneralPlanDetails");
+            writeElement(json, "Plan");
+            for (int s = 1; s < sections; s++) {
+                json.name("Section" + s).beginArray();
+                for (int r = 0; r < rowsPerArray; r++) {
+                    writeElement(json, "Section" + s + "Attr");
+                }
+                json.endArray();
+            }
+
+            json.endObject().endObject().endObject().endObject();
+        }
+    }
+
+    public void writeKeyValueRequest(File file) throws IOException {
+        try (JsonStreamWriter json = open(file)) {
+            json.beginObject().name("keyValue").beginArray();
+            for (int r = 0; r < rowsPerArray; r++) {
+                writeElement(json, "Copay");
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    private void writeElement(JsonStreamWriter json, String attributePrefix) throws IOException {
+        json.beginObject().name("keyValue").beginArray();
+        for (int a = 0; a < attributesPerRow; a++) {
+            json.beginObject();
+            json.name("attribute").value(attributePrefix + a);
+            json.name("value").value(vocabulary[a][random.nextInt(VOCABULARY_SIZE)]);
+            json.endObject();
+        }
+        json.endArray().endObject();
+    }
+
+    private String randomValue(int length) {
+        StringBuilder value = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            value.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return value.toString();
+    }
+
+    private static JsonStreamWriter open(File file) throws IOException {
+        return new JsonStreamWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8)), 4);
+    }
+}
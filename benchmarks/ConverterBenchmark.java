@@ -0,0 +1,144 @@
+package com.example;
+
+import convertJSONtoJAVA.requestCSVtoJSON;
+import convertJSONtoJAVA.requestJSONtoCSV;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the four converters on generated payloads.
+ * Reports throughput and average time per conversion; run main() to add the GC profiler
+ * (allocation rate and GC counts). Built by benchmarks/pom.xml, e.g.:
+ *
+ *   mvn -f benchmarks/pom.xml package
+ *   java -cp "benchmarks/target/classes:$(cat benchmarks/target/classpath.txt)" com.example.ConverterBenchmark -p rowsPerArray=100000
+ *
+ * Vary the payload with the sections, rowsPerArray, attributesPerRow and valueLength parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ConverterBenchmark {
+
+    @Param({"5"})
+    public int sections;
+
+    @Param({"1000"})
+    public int rowsPerArray;
+
+    @Param({"20"})
+    public int attributesPerRow;
+
+    @Param({"8"})
+    public int valueLength;
+
+    private File workDir;
+    private File benefitRequestJson;
+    private File benefitRequestXlsx;
+    private File keyValueJson;
+    private File keyValueCsv;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Millions of conversions: don't keep a report entry for each of them
+        RunReport.setRecording(false);
+        workDir = Files.createTempDirectory("converter-bench").toFile();
+        BenefitRequestGenerator generator =
+                new BenefitRequestGenerator(sections, rowsPerArray, attributesPerRow, valueLength);
+
+        benefitRequestJson = new File(workDir, "benefitRequest.json");
+        generator.writeBenefitRequest(benefitRequestJson);
+        keyValueJson = new File(workDir, "keyValue.json");
+        generator.writeKeyValueRequest(keyValueJson);
+
+        // The reverse directions read what the forward converters produce
+        benefitRequestXlsx = new File(workDir, "benefitRequest.xlsx");
+        JsonToExcelBatch.convertJsonToExcel(benefitRequestJson, benefitRequestXlsx);
+        keyValueCsv = new File(workDir, "keyValue.csv");
+        requestJSONtoCSV.convert(keyValueJson, keyValueCsv);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        File[] files = workDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(workDir.toPath());
+        RunReport.setRecording(true);
+    }
+
+    @Benchmark
+    public void jsonToExcel() throws Exception {
+        JsonToExcelBatch.convertJsonToExcel(benefitRequestJson, new File(workDir, "out.xlsx"));
+    }
+
+    @Benchmark
+    public KeyValueTable parseJsonReader() throws Exception {
+        try (Reader reader = Files.newBufferedReader(benefitRequestJson.toPath(), StandardCharsets.UTF_8)) {
+            return KeyValueTableIO.readJson(reader);
+        }
+    }
+
+    @Benchmark
+    public KeyValueTable parseJsonMapped() throws Exception {
+        return KeyValueTableIO.readJson(benefitRequestJson);
+    }
+
+    @Benchmark
+    public void excelToJson() throws Exception {
+        ExcelToJsonBatch.convertExcelToJsonStreaming(benefitRequestXlsx, new File(workDir, "out.json"));
+    }
+
+    @Benchmark
+    public void excelToJsonDom() throws Exception {
+        ExcelToJsonBatch.convertExcelToJson(benefitRequestXlsx, new File(workDir, "out-dom.json"));
+    }
+
+    @Benchmark
+    public void jsonToCsv() throws Exception {
+        requestJSONtoCSV.convert(keyValueJson, new File(workDir, "out.csv"));
+    }
+
+    @Benchmark
+    public void jsonToCsvStreaming() throws Exception {
+        requestJSONtoCSV.convertStreaming(keyValueJson, new File(workDir, "out-streaming.csv"), null);
+    }
+
+    @Benchmark
+    public void csvToJson() throws Exception {
+        requestCSVtoJSON.convert(keyValueCsv, new File(workDir, "out-keyValue.json"));
+    }
+
+    @Benchmark
+    public void csvToJsonStreaming() throws Exception {
+        requestCSVtoJSON.convertStreaming(keyValueCsv, new File(workDir, "out-keyValue-streaming.json"));
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(ConverterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -3,45 +3,80 @@ package convertJSONtoJAVA;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import com.example.JsonStreamWriter;
+import com.example.KeyValueTable;
+import com.example.KeyValueTableIO;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 public class requestCSVtoJSON {
 	
+	// Streaming writes the keyValue envelope record by record instead of building one JSONArray
+	private static final boolean STREAMING = true;
+
 	public static void main(String[] args) {
         String csvInputPath = "C:/Development/myCode/fromRequest/TestCopay.csv";
         String jsonOutputPath = "C:/Development/myCode/fromRequest/reversedOutput.json";
 
         try {
-            FileReader fileReader = new FileReader(csvInputPath);
-            CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(fileReader);
-            JSONArray keyValueArray = new JSONArray();
-
-            for (CSVRecord record : parser) {
-                JSONArray innerArray = new JSONArray();
-                for (String header : parser.getHeaderMap().keySet()) {
-                    JSONObject attributeValue = new JSONObject();
-                    attributeValue.put("attribute", header);
-                    attributeValue.put("value", record.get(header));
-                    innerArray.put(attributeValue);
-                }
-                JSONObject obj = new JSONObject();
-                obj.put("keyValue", innerArray);
-                keyValueArray.put(obj);
+            if (STREAMING) {
+                convertStreaming(new File(csvInputPath), new File(jsonOutputPath));
+            } else {
+                convert(new File(csvInputPath), new File(jsonOutputPath));
             }
-
-            JSONObject outputJson = new JSONObject().put("keyValue", keyValueArray);
-            Files.write(Paths.get(jsonOutputPath), outputJson.toString(4).getBytes());
             System.out.println("JSON file has been created successfully");
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
-}
 
+    /**
+     * Converts a CSV (first record is the header) back into the { "keyValue":[ { "keyValue":[...] }, ... ] } structure.
+     */
+    public static void convert(File csvFile, File jsonFile) throws Exception {
+        KeyValueTable table;
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8))) {
+            table = KeyValueTableIO.readCsv(reader, "keyValue");
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(jsonFile), StandardCharsets.UTF_8))) {
+            KeyValueTableIO.writeKeyValueJson(table.getSections().get(0), writer);
+        }
+    }
+
+    /**
+     * Streaming variant of convert: each CSV record is written to the JSON file as soon as it is parsed,
+     * so memory use doesn't grow with the number of records. Same output layout as convert.
+     */
+    public static void convertStreaming(File csvFile, File jsonFile) throws Exception {
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8));
+             CSVParser parser = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build().parse(reader);
+             JsonStreamWriter json = new JsonStreamWriter(new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(jsonFile), StandardCharsets.UTF_8)), 4)) {
+            List<String> headers = parser.getHeaderNames();
 
+            json.beginObject().name("keyValue").beginArray();
+            for (CSVRecord record : parser) {
+                json.beginObject().name("keyValue").beginArray();
+                for (int c = 0; c < headers.size(); c++) {
+                    json.beginObject();
+                    json.name("attribute").value(headers.get(c));
+                    json.name("value").value(c < record.size() ? record.get(c) : "");
+                    json.endObject();
+                }
+                json.endArray().endObject();
+            }
+            json.endArray().endObject();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example;
+
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MappedJsonReaderTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void readsBenefitRequestSections() throws IOException {
+        String json = "{ \"benefitRequest\": { \"transactionID\": \"T1\", \"clientCode\": 42, \"dataSet\": {"
+                + " \"other\": [1, 2], \"CVS\": {"
+                + "   \"Member\": { \"keyValue\": [ {\"attribute\": \"id\", \"value\": \"7\"} ] },"
+                + "   \"Copay\": [ { \"keyValue\": [ {\"attribute\": \"amount\", \"value\": 10},"
+                + "                                 {\"attribute\": \"note\", \"value\": null} ] },"
+                + "              { \"ignored\": true, \"keyValue\": [ {\"attribute\": \"amount\", \"value\": 2.5} ] } ]"
+                + " } } } }";
+
+        assertEquals(Arrays.asList(
+                "property transactionID=T1",
+                "property clientCode=42",
+                "section Member object", "row", "cell id=7", "endRow", "endSection",
+                "section Copay array",
+                "row", "cell amount=10", "cell note=", "endRow",
+                "row", "cell amount=2.5", "endRow",
+                "endSection"), read(json));
+    }
+
+    @Test
+    void readsTopLevelKeyValueArray() throws IOException {
+        String json = "{\"keyValue\":[{\"keyValue\":[{\"attribute\":\"a\",\"value\":\"1\"},{\"value\":\"no attribute\"}]}]}";
+
+        assertEquals(Arrays.asList("section keyValue array", "row", "cell a=1", "endRow", "endSection"), read(json));
+    }
+
+    @Test
+    void decodesEscapesAndUtf8() throws IOException {
+        String json = "\uFEFF{'keyValue':[{'keyValue':[{'attribute':'caf\u00e9','value':"
+                + "\"tab\\t \\u00e9 \\ud83d\\ude00 \u20ac lone \\ud83d!\"}]}]}";
+
+        List<String> events = read(json);
+
+        assertEquals("cell caf\u00e9=tab\t \u00e9 \ud83d\ude00 \u20ac lone \uFFFD!", events.get(2));
+    }
+
+    @Test
+    void reportsTheSameEventsAsKeyValueJsonReader() throws IOException {
+        String json = "{ \"benefitRequest\": { \"dataSet\": { \"CVS\": { \"Plan\": [ { \"keyValue\": ["
+                + " {\"attribute\": \"flag\", \"value\": true}, {\"attribute\": \"big\", \"value\": 12345678901234},"
+                + " {\"attribute\": \"nested\", \"value\": {\"x\": [1, 2]}}, {\"attribute\": \"word\", \"value\": bare} ] } ] } } } }";
+
+        RecordingHandler expected = new RecordingHandler();
+        KeyValueJsonReader.read(new StringReader(json), expected);
+
+        assertEquals(expected.events, read(json));
+    }
+
+    @Test
+    void readsFilesLargerThanOneBuffer() throws IOException {
+        // Past MappedJsonReader's 4 MB threshold, so the file is memory-mapped
+        int rows = 60_000;
+        StringBuilder json = new StringBuilder("{\"keyValue\":[");
+        for (int r = 0; r < rows; r++) {
+            json.append(r == 0 ? "" : ",").append("{\"keyValue\":[{\"attribute\":\"row\",\"value\":\"")
+                    .append(r).append("\"},{\"attribute\":\"text\",\"value\":\"lorem ipsum dolor sit amet\"}]}");
+        }
+        json.append("]}");
+
+        List<String> events = read(json.toString());
+
+        assertEquals(2 + rows * 4, events.size());
+        assertEquals("cell row=" + (rows - 1), events.get(events.size() - 4));
+    }
+
+    @Test
+    void rejectsMalformedJson() {
+        for (String json : Arrays.asList("{\"keyValue\": [", "{keyValue: []}", "[1, 2]", "")) {
+            IOException e = assertThrows(IOException.class, () -> read(json), json);
+            assertInstanceOf(JSONException.class, e.getCause(), json);
+        }
+    }
+
+    private List<String> read(String json) throws IOException {
+        File file = new File(dir, "request.json");
+        Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        RecordingHandler handler = new RecordingHandler();
+        MappedJsonReader.read(file, handler);
+        return handler.events;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Handler that writes down every event it receives as a line of text, e.g. "section Copay array",
+ * "cell copay=10", so tests can compare what readers report.
+ */
+class RecordingHandler implements KeyValueJsonReader.Handler {
+    final List<String> events = new ArrayList<>();
+
+    @Override
+    public void property(String name, String value) {
+        events.add("property " + name + "=" + value);
+    }
+
+    @Override
+    public void startSection(String name, boolean array) {
+        events.add("section " + name + (array ? " array" : " object"));
+    }
+
+    @Override
+    public void startRow() {
+        events.add("row");
+    }
+
+    @Override
+    public void cell(String attribute, String value) {
+        events.add("cell " + attribute + "=" + value);
+    }
+
+    @Override
+    public void endRow() {
+        events.add("endRow");
+    }
+
+    @Override
+    public void endSection() {
+        events.add("endSection");
+    }
+}
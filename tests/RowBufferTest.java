@@ -0,0 +1,143 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowBufferTest {
+
+    // Sparse rows as "column=value" cells: an empty row, an empty value, multi-byte text and a
+    // value longer than the spill file's initial read buffer
+    private static final List<List<String>> ROWS = Arrays.asList(
+            Arrays.asList("0=a", "1=b", "2=c"),
+            Arrays.asList(),
+            Arrays.asList("2=", "5=café € 😀"),
+            Arrays.asList("0=" + "x".repeat(1000)),
+            Arrays.asList("1=last"));
+
+    @Test
+    void spillFileReadsRowsBackInOrder() throws IOException {
+        try (RowSpillFile spill = new RowSpillFile()) {
+            appendAll(spill::append);
+
+            assertEquals(ROWS.size(), spill.getRowCount());
+            try (RowSpillFile.Cursor cursor = spill.openCursor()) {
+                List<List<String>> rows = new ArrayList<>();
+                while (cursor.next()) {
+                    List<String> row = new ArrayList<>();
+                    for (int i = 0; i < cursor.size(); i++) {
+                        row.add(cursor.column(i) + "=" + cursor.value(i));
+                    }
+                    rows.add(row);
+                }
+                assertEquals(ROWS, rows);
+            }
+        }
+    }
+
+    @Test
+    void keepsSmallSectionsInMemory() throws IOException {
+        try (RowBuffer buffer = new RowBuffer()) {
+            appendAll(buffer::append);
+
+            assertFalse(buffer.isSpilled());
+            assertEquals(ROWS, readAll(buffer));
+        }
+    }
+
+    @Test
+    void spillsFromTheFirstRowWithThresholdZero() throws IOException {
+        try (RowBuffer buffer = new RowBuffer(0)) {
+            appendAll(buffer::append);
+
+            assertTrue(buffer.isSpilled());
+            assertEquals(ROWS.size(), buffer.getRowCount());
+            assertEquals(ROWS, readAll(buffer));
+        }
+    }
+
+    @Test
+    void movesBufferedRowsToTheSpillFile() throws IOException {
+        // Room for the first rows only: the rest go to the file after them
+        try (RowBuffer buffer = new RowBuffer(100)) {
+            appendAll(buffer::append);
+
+            assertTrue(buffer.isSpilled());
+            assertEquals(ROWS, readAll(buffer));
+        }
+    }
+
+    @Test
+    void cursorsCanBeOpenAtTheSameTime() throws IOException {
+        try (RowBuffer buffer = new RowBuffer(0)) {
+            appendAll(buffer::append);
+
+            try (RowBuffer.Cursor first = buffer.openCursor(); RowBuffer.Cursor second = buffer.openCursor()) {
+                assertTrue(first.next());
+                assertTrue(first.next());
+                assertTrue(second.next());
+                assertEquals("a", second.value(0));
+                assertEquals(0, first.size());
+            }
+        }
+    }
+
+    @Test
+    void sharedBudgetSpillsWhicheverBufferRunsOut() throws IOException {
+        AtomicLong budget = new AtomicLong(200);
+        try (RowBuffer first = new RowBuffer(budget); RowBuffer second = new RowBuffer(budget)) {
+            first.append(new int[] {0}, new String[] {"x".repeat(40)}, 1);
+            assertTrue(budget.get() < 200);
+
+            // Fits into 200 bytes on its own, but not next to the first buffer's row
+            second.append(new int[] {0}, new String[] {"y".repeat(60)}, 1);
+            assertFalse(first.isSpilled());
+            assertTrue(second.isSpilled());
+
+            first.close();
+            assertEquals(200, budget.get());
+            assertEquals(Arrays.asList(Arrays.asList("0=" + "y".repeat(60))), readAll(second));
+        }
+    }
+
+    private interface Appender {
+        void append(int[] columns, String[] values, int count) throws IOException;
+    }
+
+    private static void appendAll(Appender appender) throws IOException {
+        // Arrays longer than the row, as callers reuse them
+        int[] columns = new int[8];
+        String[] values = new String[8];
+        for (List<String> row : ROWS) {
+            for (int i = 0; i < row.size(); i++) {
+                String cell = row.get(i);
+                int equals = cell.indexOf('=');
+                columns[i] = Integer.parseInt(cell.substring(0, equals));
+                values[i] = cell.substring(equals + 1);
+            }
+            appender.append(columns, values, row.size());
+        }
+    }
+
+    private static List<List<String>> readAll(RowBuffer buffer) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        try (RowBuffer.Cursor cursor = buffer.openCursor()) {
+            while (cursor.next()) {
+                List<String> row = new ArrayList<>();
+                for (int i = 0; i < cursor.size(); i++) {
+                    row.add(cursor.column(i) + "=" + cursor.value(i));
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ShardedWorkbookWriterTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void shardsSheetsAndWorkbooksAndJoinsThemBack() throws IOException {
+        File target = new File(dir, "request.xlsx");
+        try (ShardedWorkbookWriter writer = newWriter(target)) {
+            // 2 data rows per sheet, a new part after 5 rows
+            writer.setLimits(2, 5, Long.MAX_VALUE);
+            writeSection(writer, "Copay", 7);
+            writeSection(writer, "Member", 1);
+            List<File> parts = writer.finish();
+
+            assertEquals(Arrays.asList(target, new File(dir, "request.part2.xlsx")), parts);
+        }
+        assertEquals(Arrays.asList("Copay", "Copay#2", "Copay#3"), sheetNames(target));
+        assertEquals(Arrays.asList("Copay#4", "Member"), sheetNames(new File(dir, "request.part2.xlsx")));
+
+        List<String> expected = new ArrayList<>();
+        expected.add("section Copay array");
+        expected.addAll(rows("Copay", 7));
+        expected.add("endSection");
+        expected.add("section Member object");
+        expected.addAll(rows("Member", 1));
+        expected.add("endSection");
+        assertEquals(expected, readSax(target));
+        assertEquals(expected, readDom(target));
+    }
+
+    @Test
+    void sectionNamedLikeAShardStaysASection() throws IOException {
+        File target = new File(dir, "request.xlsx");
+        try (ShardedWorkbookWriter writer = newWriter(target)) {
+            writeSection(writer, "X", 2);
+            writeSection(writer, "X#2", 2);
+            writer.finish();
+        }
+
+        List<String> expected = new ArrayList<>();
+        expected.add("section X array");
+        expected.addAll(rows("X", 2));
+        expected.add("endSection");
+        expected.add("section X#2 array");
+        expected.addAll(rows("X#2", 2));
+        expected.add("endSection");
+        assertEquals(expected, readSax(target));
+        assertEquals(expected, readDom(target));
+    }
+
+    @Test
+    void realSectionAfterShardsOfTheSameName() throws IOException {
+        File target = new File(dir, "request.xlsx");
+        try (ShardedWorkbookWriter writer = newWriter(target)) {
+            writer.setLimits(1, Long.MAX_VALUE, Long.MAX_VALUE);
+            // Sheets X, X#2, then the real section "X#3", which is what the next shard would be called
+            writeSection(writer, "X", 2);
+            writeSection(writer, "X#3", 1);
+            writer.finish();
+        }
+        assertEquals(Arrays.asList("X", "X#2", "X#3"), sheetNames(target));
+
+        List<String> expected = new ArrayList<>();
+        expected.add("section X array");
+        expected.addAll(rows("X", 2));
+        expected.add("endSection");
+        expected.add("section X#3 object");
+        expected.addAll(rows("X#3", 1));
+        expected.add("endSection");
+        assertEquals(expected, readSax(target));
+        assertEquals(expected, readDom(target));
+    }
+
+    @Test
+    void shortensLongNamesToFitTheShardNumber() {
+        String name = "ABCDEFGHIJKLMNOPQRSTUVWXYZ01234";
+
+        assertEquals(name, ShardedWorkbookWriter.shardName(name, 1));
+        assertEquals("ABCDEFGHIJKLMNOPQRSTUVWXYZ01#12", ShardedWorkbookWriter.shardName(name, 12));
+    }
+
+    private static ShardedWorkbookWriter newWriter(File target) {
+        return new ShardedWorkbookWriter(target, XSSFWorkbook::new, Workbook::createCellStyle,
+                ColumnWidths.Strategy.OFF, XlsxOutput.Compression.DEFAULT, false, null);
+    }
+
+    private static void writeSection(ShardedWorkbookWriter writer, String name, int rows) throws IOException {
+        writer.startSheet(name, Arrays.asList("section", "row"));
+        for (int r = 1; r <= rows; r++) {
+            writer.addRow(new String[] {name, String.valueOf(r)});
+        }
+        writer.endSheet();
+    }
+
+    private static List<String> rows(String name, int rows) {
+        List<String> events = new ArrayList<>();
+        for (int r = 1; r <= rows; r++) {
+            events.addAll(Arrays.asList("row", "cell section=" + name, "cell row=" + r, "endRow"));
+        }
+        return events;
+    }
+
+    private static List<String> sheetNames(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file); Workbook workbook = new XSSFWorkbook(in)) {
+            List<String> names = new ArrayList<>();
+            for (int s = 0; s < workbook.getNumberOfSheets(); s++) {
+                names.add(workbook.getSheetName(s));
+            }
+            return names;
+        }
+    }
+
+    private static List<String> readSax(File file) throws IOException {
+        RecordingHandler handler = new RecordingHandler();
+        SheetSectionHandler.readXlsx(file, Projection.ALL, handler);
+        return handler.events;
+    }
+
+    /**
+     * The in-memory reader, as ExcelToJsonBatch uses it, turned back into events.
+     */
+    private static List<String> readDom(File file) throws IOException {
+        KeyValueTable table = new KeyValueTable();
+        ShardedWorkbookWriter.Continuations continuations = new ShardedWorkbookWriter.Continuations();
+        for (File part : ShardedWorkbookWriter.partFiles(file)) {
+            try (InputStream in = new FileInputStream(part); Workbook workbook = new XSSFWorkbook(in)) {
+                KeyValueTableIO.readWorkbook(workbook, table, continuations);
+            }
+        }
+        RecordingHandler handler = new RecordingHandler();
+        for (KeyValueTable.Section section : table.getSections()) {
+            handler.startSection(section.getName(), section.isArray());
+            for (int r = 0; r < section.getRowCount(); r++) {
+                handler.startRow();
+                List<String> columns = section.getColumnNames();
+                for (int c = 0; c < columns.size(); c++) {
+                    handler.cell(columns.get(c), section.get(r, c));
+                }
+                handler.endRow();
+            }
+            handler.endSection();
+        }
+        return handler.events;
+    }
+}